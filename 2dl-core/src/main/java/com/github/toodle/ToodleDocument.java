@@ -0,0 +1,350 @@
+package com.github.toodle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import com.github.toodle.ToodleParser.Alias_definitionContext;
+import com.github.toodle.ToodleParser.Let_definitionContext;
+import com.github.toodle.ToodleParser.StatementContext;
+import com.github.toodle.antlr.MyToodleListener;
+import com.github.toodle.antlr.SymbolTokenFactory;
+import com.github.toodle.model.SourceLocation;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.transformers.ExpandAliasesAndVars;
+
+/**
+ * An editable 2dl document, for editors and file watchers.
+ * <p>
+ * After an edit, only the top-level statements touched by the edit are lexed and parsed again, and only the new
+ * definitions are expanded. The whole document is parsed again if the edit changes an alias or var definition, since
+ * other definitions may depend on it, or if the edited statements contain syntax errors.
+ * <p>
+ * The text is edited in place. The positions of the statements following an edit are not updated by the edit: the
+ * shift is recorded and applied when a later edit moves it, so that an edit only updates the statements between it
+ * and the previous edit. The source locations of definitions are relative to the line of their statement, so that
+ * they follow the shift without being updated. Edited definitions replace the previous ones in place, so that the
+ * indexes of the root type are kept.
+ */
+public class ToodleDocument {
+	private final String fileName;
+	private final StringBuilder text;
+	private Type rootType;
+	private final List<Statement> statements = new ArrayList<>();
+	// the statements from shiftIndex are shifted by shiftDelta characters, shiftLineDelta lines and
+	// shiftDefinitionDelta definitions
+	private int shiftIndex;
+	private int shiftDelta;
+	private int shiftLineDelta;
+	private int shiftDefinitionDelta;
+
+	private enum StatementKind {
+		DEFINITION, ALIAS_DEFINITION, VAR_DEFINITION,
+		/**
+		 * A definition without a type, which is not part of the model.
+		 */
+		NONE
+	}
+
+	/**
+	 * A top-level statement, and the range of characters it spans in the document.
+	 */
+	private static class Statement {
+		private final StatementKind kind;
+		private final TypeDefinition definition;
+		// index of the first character
+		private int start;
+		// index following the last character
+		private int end;
+		// line of the first and last characters
+		private int line;
+		private int endLine;
+		// index of the definition of the statement, or of the next one, in the root type
+		private int definitionIndex;
+		// whether the shift applies to the statement, i.e its index is at least shiftIndex
+		private boolean shifted;
+
+		public Statement(StatementKind kind, TypeDefinition definition, int start, int end, int line, int endLine,
+				int definitionIndex) {
+			this.kind = kind;
+			this.definition = definition;
+			this.start = start;
+			this.end = end;
+			this.line = line;
+			this.endLine = endLine;
+			this.definitionIndex = definitionIndex;
+		}
+
+		private void shift(int delta, int lineDelta, int definitionDelta) {
+			start += delta;
+			end += delta;
+			line += lineDelta;
+			endLine += lineDelta;
+			definitionIndex += definitionDelta;
+			shifted = !shifted;
+		}
+	}
+
+	/**
+	 * The source location of a definition, relative to the line of its statement.
+	 */
+	private class StatementLocation extends SourceLocation {
+		private final Statement statement;
+		private final int lineOffset;
+
+		public StatementLocation(SourceLocation location, Statement statement) {
+			super(location.getFileName(), location.getLine());
+			this.statement = statement;
+			this.lineOffset = location.getLine() - statement.line;
+		}
+
+		@Override
+		public int getLine() {
+			return statement.line + (statement.shifted ? shiftLineDelta : 0) + lineOffset;
+		}
+	}
+
+	public ToodleDocument(String text, String fileName) {
+		this.fileName = fileName;
+		this.text = new StringBuilder(text);
+		parse();
+	}
+
+	public ToodleDocument(String text) {
+		this(text, "");
+	}
+
+	public String getText() {
+		return text.toString();
+	}
+
+	/**
+	 * Return the model. The source locations of its definitions follow later edits.
+	 */
+	public Type getRootType() {
+		return rootType;
+	}
+
+	/**
+	 * Replace the characters from {@code start} (inclusive) to {@code end} (exclusive) with {@code replacement}, then
+	 * update the model.
+	 * @return {@code true} if the model was updated incrementally, {@code false} if the whole document was parsed
+	 *         again.
+	 */
+	public boolean edit(int start, int end, String replacement) {
+		final int delta = replacement.length() - (end - start);
+		final int lineDelta = countLines(replacement, 0, replacement.length()) - countLines(text, start, end);
+
+		// statements touched by the edit, including those adjacent to it: [first, last)
+		final int first = indexOfFirstStatementEndingAfter(start);
+		moveShift(first);
+		int last = first;
+		while (last < statements.size() && statements.get(last).start + shiftDelta <= end) {
+			last++;
+		}
+
+		// the re-parsed region spans from the end of the previous statement to the start of the next one, so that
+		// it is lexed as in the whole document
+		final int regionStart = first > 0 ? statements.get(first - 1).end : 0;
+		final int regionEnd = (last < statements.size() ? statements.get(last).start + shiftDelta : text.length())
+				+ delta;
+		final int regionLine = first > 0 ? statements.get(first - 1).endLine : 1;
+		final List<TypeDefinition> definitions = rootType.getSubDefinitions();
+		int definitionIndex = first < statements.size() ? statements.get(first).definitionIndex + shiftDefinitionDelta
+				: definitions.size();
+
+		text.replace(start, end, replacement);
+		final MyToodleListener listener = new MyToodleListener(fileName);
+		final List<Statement> newStatements = parseStatements(regionStart, regionEnd, regionLine, definitionIndex,
+				listener, false);
+		final List<Statement> oldStatements = statements.subList(first, last);
+		if (newStatements == null || changesScope(oldStatements) || changesScope(newStatements)) {
+			parse();
+			return false;
+		}
+
+		// replace the definitions of the old statements with the new ones, in place while there are old ones
+		final int oldDefinitionCount = (int) oldStatements.stream().filter(s -> s.kind == StatementKind.DEFINITION)
+				.count();
+		final int firstDefinitionIndex = definitionIndex;
+		final ExpandAliasesAndVars expand = new ExpandAliasesAndVars();
+		for (final Statement statement : newStatements) {
+			if (statement.kind != StatementKind.DEFINITION) continue;
+			final TypeDefinition definition = statement.definition;
+			definition.getType().setParent(rootType);
+			if (definitionIndex - firstDefinitionIndex < oldDefinitionCount) {
+				definitions.set(definitionIndex++, definition);
+			} else {
+				definitions.add(definitionIndex++, definition);
+			}
+			expand.execute(definition.getType(), rootType);
+			setLocations(definition, statement);
+		}
+		final int definitionDelta = definitionIndex - firstDefinitionIndex - oldDefinitionCount;
+		if (definitionDelta < 0) definitions.subList(definitionIndex, definitionIndex - definitionDelta).clear();
+
+		// the statements following the edit are shifted lazily
+		oldStatements.clear();
+		oldStatements.addAll(newStatements);
+		shiftIndex = first + newStatements.size();
+		shiftDelta += delta;
+		shiftLineDelta += lineDelta;
+		shiftDefinitionDelta += definitionDelta;
+		return true;
+	}
+
+	/**
+	 * Return the index of the first statement ending at or after {@code offset}, or the number of statements.
+	 */
+	private int indexOfFirstStatementEndingAfter(int offset) {
+		int low = 0;
+		int high = statements.size();
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			final int end = statements.get(mid).end + (mid >= shiftIndex ? shiftDelta : 0);
+			if (end < offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Apply the shift to the statements between the current shift index and {@code index}, or remove it from them,
+	 * so that the statements from {@code index} are shifted.
+	 */
+	private void moveShift(int index) {
+		for (; shiftIndex < index; shiftIndex++) {
+			statements.get(shiftIndex).shift(shiftDelta, shiftLineDelta, shiftDefinitionDelta);
+		}
+		while (shiftIndex > index) {
+			statements.get(--shiftIndex).shift(-shiftDelta, -shiftLineDelta, -shiftDefinitionDelta);
+		}
+	}
+
+	/**
+	 * Make the source locations of {@code definition} and its sub-definitions relative to {@code statement}.
+	 */
+	private void setLocations(TypeDefinition definition, Statement statement) {
+		final SourceLocation location = definition.getLocation();
+		if (location != null) definition.setLocation(new StatementLocation(location, statement));
+		setLocations(definition.getType(), statement);
+	}
+
+	private void setLocations(Type type, Statement statement) {
+		type.getTypeParams().forEach(t -> setLocations(t, statement));
+		type.getSubDefinitions().forEach(d -> setLocations(d, statement));
+	}
+
+	private void parse() {
+		final MyToodleListener listener = new MyToodleListener(fileName);
+		statements.clear();
+		statements.addAll(parseStatements(0, text.length(), 1, 0, listener, true));
+		shiftIndex = 0;
+		shiftDelta = 0;
+		shiftLineDelta = 0;
+		shiftDefinitionDelta = 0;
+		rootType = listener.getRootType();
+		ToodleReader.expand(rootType);
+		for (final Statement statement : statements) {
+			statement.shifted = true;
+			if (statement.definition != null) setLocations(statement.definition, statement);
+		}
+	}
+
+	/**
+	 * Parse the top-level statements between {@code start} and {@code end}.
+	 * @param line The line of the character at {@code start}.
+	 * @param definitionIndex The index in the root type of the first definition of the statements.
+	 * @param reportErrors If {@code true}, syntax errors are reported on the console. Otherwise, {@code null} is
+	 *        returned in case of syntax errors.
+	 */
+	private List<Statement> parseStatements(int start, int end, int line, int definitionIndex,
+			MyToodleListener listener, boolean reportErrors) {
+		final ToodleLexer lexer = new ToodleLexer(CharStreams.fromString(text.substring(start, end)));
+		lexer.setTokenFactory(new SymbolTokenFactory());
+		lexer.setLine(line);
+		final CommonTokenStream tokens = new CommonTokenStream(lexer);
+		final ToodleParser parser = new ToodleParser(tokens);
+		final SyntaxErrorCounter errorCounter = new SyntaxErrorCounter();
+		if (!reportErrors) {
+			lexer.removeErrorListeners();
+			parser.removeErrorListeners();
+		}
+		lexer.addErrorListener(errorCounter);
+		parser.addErrorListener(errorCounter);
+		parser.addParseListener(listener);
+
+		final List<TypeDefinition> definitions = listener.getRootType().getSubDefinitions();
+		final List<Statement> res = new ArrayList<>();
+		while (true) {
+			// skip the new lines between statements
+			while (tokens.LA(1) == ToodleLexer.NL) {
+				tokens.consume();
+			}
+			if (tokens.LA(1) == Token.EOF) break;
+
+			final int index = tokens.index();
+			final int definitionCount = definitions.size();
+			final StatementContext ctx = parser.statement();
+			// make sure to progress in case of a syntax error
+			if (tokens.index() == index) tokens.consume();
+			if (ctx.stop == null || ctx.stop.getTokenIndex() < ctx.start.getTokenIndex()) continue;
+
+			final ParseTree child = ctx.getChild(0);
+			final StatementKind kind;
+			TypeDefinition definition = null;
+			if (child instanceof Alias_definitionContext) {
+				kind = StatementKind.ALIAS_DEFINITION;
+			} else if (child instanceof Let_definitionContext) {
+				kind = StatementKind.VAR_DEFINITION;
+			} else if (definitions.size() > definitionCount) {
+				kind = StatementKind.DEFINITION;
+				definition = definitions.get(definitions.size() - 1);
+			} else {
+				kind = StatementKind.NONE;
+			}
+			final int endLine = ctx.stop.getLine() + countLines(ctx.stop.getText(), 0, ctx.stop.getText().length());
+			res.add(new Statement(kind, definition, start + ctx.start.getStartIndex(),
+					start + ctx.stop.getStopIndex() + 1, ctx.start.getLine(), endLine,
+					definitionIndex + definitionCount));
+		}
+		return reportErrors || errorCounter.count == 0 ? res : null;
+	}
+
+	/**
+	 * Return whether any of the statements defines an alias or var, which may be used by other statements.
+	 */
+	private static boolean changesScope(List<Statement> statements) {
+		return statements.stream().anyMatch(
+				s -> s.kind == StatementKind.ALIAS_DEFINITION || s.kind == StatementKind.VAR_DEFINITION);
+	}
+
+	private static int countLines(CharSequence s, int start, int end) {
+		int res = 0;
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) == '\n') res++;
+		}
+		return res;
+	}
+
+	private static class SyntaxErrorCounter extends BaseErrorListener {
+		private int count;
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+				String msg, RecognitionException e) {
+			count++;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.github.toodle;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.toodle.ToodleReader.Backend;
+import com.github.toodle.ToodleReader.ParseMode;
+import com.github.toodle.antlr.MyToodleListener;
+import com.github.toodle.model.AliasDefinition;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.VarDefinition;
+import com.github.toodle.transformers.TransformerPipeline;
+import com.github.toodle.validator.ToodleValidationException;
+
+/**
+ * Reads definitions split across several 2dl files.
+ * <p>
+ * Files are lexed and parsed in parallel, then merged into a single root type in the order they were given. Aliases
+ * and vars are expanded after the merge, so that those defined at top level in a file are visible from the others.
+ * An alias or var defined at top level in several files is reported as a {@link ToodleValidationException}.
+ */
+public class ToodleProjectReader {
+	public static final String FILE_EXTENSION = ".2dl";
+	private final List<Path> files;
+	private final Reader schemaReader;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private Backend backend = Backend.ANTLR;
+	private ParseMode parseMode = ParseMode.LL;
+	private TransformerPipeline transformerPipeline = TransformerPipeline.createDefault();
+
+	/**
+	 * @param files The files containing definitions in 2dl format.
+	 * @param schemaReader Optional. If not null, the definitions will be validated against the schema.
+	 */
+	public ToodleProjectReader(Collection<Path> files, Reader schemaReader) {
+		this.files = new ArrayList<>(files);
+		this.schemaReader = schemaReader;
+	}
+
+	public ToodleProjectReader(Collection<Path> files) {
+		this(files, null);
+	}
+
+	/**
+	 * Return the {@value #FILE_EXTENSION} files of {@code directory} and its sub-directories, sorted by path.
+	 */
+	public static List<Path> findFiles(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			return paths.filter(Files::isRegularFile).filter(p -> p.getFileName().toString().endsWith(FILE_EXTENSION))
+					.sorted().collect(Collectors.toList());
+		}
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Set the pool on which files are parsed. Defaults to the common pool.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public Backend getBackend() {
+		return backend;
+	}
+
+	public void setBackend(Backend backend) {
+		this.backend = backend;
+	}
+
+	public ParseMode getParseMode() {
+		return parseMode;
+	}
+
+	public void setParseMode(ParseMode parseMode) {
+		this.parseMode = parseMode;
+	}
+
+	public TransformerPipeline getTransformerPipeline() {
+		return transformerPipeline;
+	}
+
+	/**
+	 * Set the passes run on the definitions after they are merged. Defaults to
+	 * {@link TransformerPipeline#createDefault()}.
+	 */
+	public void setTransformerPipeline(TransformerPipeline transformerPipeline) {
+		this.transformerPipeline = transformerPipeline;
+	}
+
+	public Type read() throws IOException {
+		final List<ForkJoinTask<Type>> tasks = new ArrayList<>();
+		for (final Path file : files) {
+			tasks.add(pool.submit(() -> parse(file)));
+		}
+
+		final Type rootType = new Type(MyToodleListener.ROOT_TYPE_NAME, null);
+		final List<String> duplicates = new ArrayList<>();
+		try {
+			for (final ForkJoinTask<Type> task : tasks) {
+				merge(task.join(), rootType, duplicates);
+			}
+		} catch (final RuntimeException e) {
+			// the other files are not parsed if their tasks have not started yet
+			tasks.forEach(task -> task.cancel(false));
+			if (e instanceof UncheckedIOException) throw ((UncheckedIOException) e).getCause();
+			throw e;
+		}
+		if (!duplicates.isEmpty()) {
+			throw new ToodleValidationException("Merge failed. Duplicate definitions were found:", duplicates);
+		}
+
+		transformerPipeline.execute(rootType);
+		if (schemaReader != null) ToodleReader.validate(rootType, schemaReader, backend);
+		return rootType;
+	}
+
+	private Type parse(Path file) {
+		try {
+			return ToodleReader.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), file.toString(),
+					backend, parseMode);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Move the definitions, aliases and vars of {@code fileRootType} to {@code rootType}. Aliases and vars already
+	 * defined in {@code rootType} are reported in {@code duplicates}, and not moved.
+	 */
+	private static void merge(Type fileRootType, Type rootType, List<String> duplicates) {
+		for (final AliasDefinition alias : fileRootType.getAliasDefinitions()) {
+			final AliasDefinition existing = rootType.getAliasDefinitionMap().get(alias.getName());
+			if (existing != null) {
+				duplicates.add(String.format("alias %s is defined at %s and %s", alias.getName(),
+						existing.getLocation(), alias.getLocation()));
+				continue;
+			}
+			alias.getValue().setParent(rootType);
+			rootType.addAliasDefinition(alias.getName(), alias.getValue(), alias.getLocation());
+		}
+		for (final VarDefinition var : fileRootType.getVarDefinitions()) {
+			final VarDefinition existing = rootType.getVarDefinitionMap().get(var.getName());
+			if (existing != null) {
+				duplicates.add(String.format("var $%s is defined at %s and %s", var.getName(), existing.getLocation(),
+						var.getLocation()));
+				continue;
+			}
+			rootType.addVarDefinition(var.getName(), var.getValue(), var.getLocation());
+		}
+		for (final TypeDefinition definition : fileRootType.getSubDefinitions()) {
+			definition.getType().setParent(rootType);
+			rootType.getSubDefinitions().add(definition);
+		}
+	}
+}
@@ -3,20 +3,64 @@ package com.github.toodle;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import com.github.toodle.antlr.MyToodleListener;
+import com.github.toodle.antlr.SymbolTokenFactory;
 import com.github.toodle.model.Type;
-import com.github.toodle.transformers.ExpandAliases;
-import com.github.toodle.transformers.ExpandVars;
+import com.github.toodle.parser.RecursiveDescentParser;
+import com.github.toodle.parser.ToodleSyntaxException;
+import com.github.toodle.transformers.TransformerPipeline;
 import com.github.toodle.validator.ToodleSchema;
+import com.github.toodle.validator.ToodleSchemaCache;
 import com.github.toodle.validator.ToodleValidationException;
 
 public class ToodleReader {
+	private static final String META_SCHEMA_RESOURCE = "2dl-schema.2dl";
 	private final Reader definitionsReader;
 	private final Reader schemaReader;
+	private Backend backend = Backend.ANTLR;
+	private ParseMode parseMode = ParseMode.LL;
+	private boolean buildParseTree = false;
+	private PredictionMode predictionModeUsed;
+	private TransformerPipeline transformerPipeline = TransformerPipeline.createDefault();
+
+	public enum Backend {
+		/**
+		 * Parse with the parser generated by ANTLR from {@code Toodle.g4}, which reports syntax errors on the console
+		 * and recovers from them.
+		 */
+		ANTLR,
+		/**
+		 * Parse with the hand-written {@link RecursiveDescentParser}, which has a faster cold start and a higher
+		 * throughput, and stops at the first syntax error with a {@link ToodleSyntaxException}.
+		 */
+		RECURSIVE_DESCENT
+	}
+
+	public enum ParseMode {
+		/**
+		 * Parse with full LL prediction.
+		 */
+		LL,
+		/**
+		 * Parse with SLL prediction, bailing out on the first syntax error, then parse again with full LL prediction
+		 * only if SLL parsing failed. Faster for most inputs; syntax errors are reported by the second stage only.
+		 */
+		SLL_THEN_LL
+	}
 
 	/**
 	 * @param definitionsReader The reader containing definitions in 2dl format.
@@ -31,46 +75,220 @@ public class ToodleReader {
 		this(definitionsReader, null);
 	}
 
+	public Backend getBackend() {
+		return backend;
+	}
+
+	public void setBackend(Backend backend) {
+		this.backend = backend;
+	}
+
+	public ParseMode getParseMode() {
+		return parseMode;
+	}
+
+	/**
+	 * Set the prediction mode of the {@link Backend#ANTLR} backend.
+	 */
+	public void setParseMode(ParseMode parseMode) {
+		this.parseMode = parseMode;
+	}
+
+	public boolean isBuildParseTree() {
+		return buildParseTree;
+	}
+
+	/**
+	 * Set whether the parser of the {@link Backend#ANTLR} backend builds a parse tree. Defaults to {@code false}: the
+	 * model is built directly from the tokens, and the parse tree is not needed.
+	 */
+	public void setBuildParseTree(boolean buildParseTree) {
+		this.buildParseTree = buildParseTree;
+	}
+
+	public TransformerPipeline getTransformerPipeline() {
+		return transformerPipeline;
+	}
+
+	/**
+	 * Set the passes run on the definitions after they are parsed. Defaults to
+	 * {@link TransformerPipeline#createDefault()}.
+	 */
+	public void setTransformerPipeline(TransformerPipeline transformerPipeline) {
+		this.transformerPipeline = transformerPipeline;
+	}
+
+	/**
+	 * Return the prediction mode with which the definitions were parsed by the last call to {@link #read()}:
+	 * {@code SLL} if the first stage of {@link ParseMode#SLL_THEN_LL} succeeded, {@code LL} otherwise, or
+	 * {@code null} with the {@link Backend#RECURSIVE_DESCENT} backend.
+	 */
+	public PredictionMode getPredictionModeUsed() {
+		return predictionModeUsed;
+	}
+
 	public Type read() throws IOException {
-		final Type rootType = read(definitionsReader);
-		if (schemaReader != null) {
-			final Type schemaRootType = read(schemaReader);
+		final Type rootType = parse(readFully(definitionsReader), "");
+		transformerPipeline.execute(rootType);
+		if (schemaReader != null) validate(rootType, schemaReader, backend);
+		return rootType;
+	}
+
+	/**
+	 * Validate definitions against the schema read from {@code schemaReader}.
+	 */
+	static void validate(Type rootType, Reader schemaReader, Backend backend) throws IOException {
+		final ToodleSchema validator = new ToodleSchema(getSchema(schemaReader, backend));
+		if (!validator.validate(rootType)) {
+			throw new ToodleValidationException("Validation failed. Violations were found:",
+					validator.getViolations());
+		}
+	}
+
+	/**
+	 * Return the compiled schema read from {@code schemaReader}. The schema is only parsed and validated against the
+	 * meta-schema if the same content is not already in the {@link ToodleSchemaCache}.
+	 */
+	private static ToodleSchema getSchema(Reader schemaReader, Backend backend) throws IOException {
+		final String schemaContent = readFully(schemaReader);
+		final String contentHash = ToodleSchemaCache.hash(schemaContent);
+		final ToodleSchemaCache cache = ToodleSchemaCache.get();
+		ToodleSchema schema = cache.get(contentHash);
+		if (schema == null) {
+			final Type schemaRootType = read(schemaContent, backend);
 
 			// validate schema against meta-schema
-			try (final InputStreamReader metaSchemaReader = new InputStreamReader(
-					ToodleReader.class.getClassLoader().getResourceAsStream("2dl-schema.2dl"), "UTF-8")) {
-				final Type metaSchemaRootType = read(metaSchemaReader);
-				final ToodleSchema schemaValidator = new ToodleSchema(metaSchemaRootType);
-				if (!schemaValidator.validate(schemaRootType)) {
-					throw new ToodleValidationException("Schema validation failed. Violations were found:",
-							schemaValidator.getViolations());
-				}
-
-				// validate definitions against schema
-				final ToodleSchema validator = new ToodleSchema(schemaRootType);
-				if (!validator.validate(rootType)) {
-					throw new ToodleValidationException("Validation failed. Violations were found:",
-							validator.getViolations());
-				}
+			final ToodleSchema schemaValidator = new ToodleSchema(MetaSchemaHolder.metaSchema);
+			if (!schemaValidator.validate(schemaRootType)) {
+				throw new ToodleValidationException("Schema validation failed. Violations were found:",
+						schemaValidator.getViolations());
 			}
+			// cached schemas are read by several threads
+			schema = new ToodleSchema(schemaRootType.freeze());
+			cache.put(contentHash, schema);
 		}
+		return schema;
+	}
+
+	private static String readFully(Reader reader) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final char[] buffer = new char[8192];
+		int n;
+		while ((n = reader.read(buffer)) != -1) {
+			sb.append(buffer, 0, n);
+		}
+		return sb.toString();
+	}
+
+	private static Type read(String text, Backend backend) {
+		final Type rootType = parse(text, "", backend, ParseMode.LL);
+		expand(rootType);
+		return rootType;
+	}
+
+	/**
+	 * Parse definitions without expanding them.
+	 * @param fileName The file name used in the source location of definitions.
+	 */
+	static Type parse(String text, String fileName, Backend backend, ParseMode parseMode) {
+		if (backend == Backend.RECURSIVE_DESCENT) return new RecursiveDescentParser(text, fileName).parse();
+		return parse(createParser(CharStreams.fromString(text, fileName)), fileName, parseMode);
+	}
+
+	private Type parse(String text, String fileName) {
+		if (backend == Backend.RECURSIVE_DESCENT) {
+			predictionModeUsed = null;
+			return new RecursiveDescentParser(text, fileName).parse();
+		}
+
+		final ToodleParser parser = createParser(CharStreams.fromString(text, fileName));
+		parser.setBuildParseTree(buildParseTree);
+		final Type rootType = parse(parser, fileName, parseMode);
+		predictionModeUsed = parser.getInterpreter().getPredictionMode();
 		return rootType;
 	}
 
-	private static Type read(Reader reader) throws IOException {
-		final ToodleLexer lexer = new ToodleLexer(CharStreams.fromReader(reader));
+	/**
+	 * Parse definitions with the ANTLR backend. With {@link ParseMode#SLL_THEN_LL}, the prediction mode of the parser
+	 * is left to {@code LL} if the first stage failed.
+	 */
+	private static Type parse(ToodleParser parser, String fileName, ParseMode parseMode) {
+		if (parseMode == ParseMode.SLL_THEN_LL) {
+			parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			parser.removeErrorListeners();
+			parser.setErrorHandler(new SllErrorStrategy());
+			try {
+				return parse(parser, fileName);
+			} catch (final ParseCancellationException e) {
+				// SLL parsing failed: rewind the token stream and parse again with full LL prediction
+				parser.reset();
+				parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+				parser.setErrorHandler(new DefaultErrorStrategy());
+				parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			}
+		}
+		return parse(parser, fileName);
+	}
+
+	private static ToodleParser createParser(CharStream input) {
+		final ToodleLexer lexer = new ToodleLexer(input);
+		lexer.setTokenFactory(new SymbolTokenFactory());
 		// Get a list of matched tokens
 		final CommonTokenStream tokens = new CommonTokenStream(lexer);
 
 		// Pass the tokens to the parser
 		final ToodleParser parser = new ToodleParser(tokens);
+		parser.setBuildParseTree(false);
+		return parser;
+	}
 
-		final MyToodleListener listener = new MyToodleListener();
+	private static Type parse(ToodleParser parser, String fileName) {
+		final MyToodleListener listener = new MyToodleListener(fileName);
 		parser.addParseListener(listener);
-		parser.definitions();
-		final Type rootType = listener.getRootType();
-		new ExpandVars().execute(rootType);
-		new ExpandAliases().execute(rootType);
-		return rootType;
+		try {
+			parser.definitions();
+		} finally {
+			parser.removeParseListener(listener);
+		}
+		return listener.getRootType();
+	}
+
+	static void expand(Type rootType) {
+		TransformerPipeline.createDefault().execute(rootType);
+	}
+
+	/**
+	 * Bails out on the first syntax error. Parse listeners are removed first, so that they are not notified of the
+	 * rules exited while the parser unwinds.
+	 */
+	private static class SllErrorStrategy extends BailErrorStrategy {
+		@Override
+		public void recover(Parser recognizer, RecognitionException e) {
+			recognizer.removeParseListeners();
+			super.recover(recognizer, e);
+		}
+
+		@Override
+		public Token recoverInline(Parser recognizer) throws RecognitionException {
+			recognizer.removeParseListeners();
+			return super.recoverInline(recognizer);
+		}
+	}
+
+	/**
+	 * Holds the meta-schema, which is compiled once per class loader on first use.
+	 */
+	private static class MetaSchemaHolder {
+		private static final ToodleSchema metaSchema = readMetaSchema();
+
+		private static ToodleSchema readMetaSchema() {
+			try (final InputStreamReader metaSchemaReader = new InputStreamReader(
+					ToodleReader.class.getClassLoader().getResourceAsStream(META_SCHEMA_RESOURCE), "UTF-8")) {
+				// the meta-schema is valid, so it does not need the error recovery of the ANTLR backend
+				return new ToodleSchema(read(readFully(metaSchemaReader), Backend.RECURSIVE_DESCENT).freeze());
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 }
@@ -0,0 +1,159 @@
+package com.github.toodle;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+
+import com.github.toodle.antlr.MyToodleListener;
+import com.github.toodle.antlr.SymbolTokenFactory;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.transformers.ExpandAliasesAndVars;
+
+/**
+ * Reads top-level definitions one at a time, in bounded memory: neither the previously read definitions, nor the
+ * token buffer, nor the parse tree are kept.
+ * <p>
+ * Top-level alias and var definitions stay in scope once read: each definition is expanded against the aliases and
+ * vars defined before it.
+ */
+public class ToodleStreamReader implements Iterator<TypeDefinition>, AutoCloseable {
+	private final Reader reader;
+	private final TokenStream tokens;
+	private final ToodleParser parser;
+	private final MyToodleListener listener = new MyToodleListener();
+	private TypeDefinition next;
+
+	/**
+	 * @param reader The reader containing definitions in 2dl format.
+	 */
+	public ToodleStreamReader(Reader reader) {
+		this.reader = reader;
+		final ToodleLexer lexer = new ToodleLexer(new UnbufferedCharStream(reader));
+		// the characters of a token are discarded once it is read, so its text must be copied
+		lexer.setTokenFactory(new SymbolTokenFactory(true));
+		this.tokens = new UnbufferedTokenStream<>(new DefaultChannelTokenSource(lexer));
+		this.parser = new ToodleParser(tokens);
+		parser.setBuildParseTree(false);
+		parser.addParseListener(listener);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (next == null) {
+			// skip the new lines between statements
+			while (tokens.LA(1) == ToodleLexer.NL) {
+				tokens.consume();
+			}
+			if (tokens.LA(1) == Token.EOF) return false;
+
+			final int index = tokens.index();
+			parser.statement();
+			// make sure to progress in case of a syntax error
+			if (tokens.index() == index) tokens.consume();
+
+			// only the definitions are returned; aliases and vars are kept in the root scope
+			final Type rootType = listener.getRootType();
+			final Collection<TypeDefinition> definitions = rootType.getSubDefinitions();
+			if (definitions.isEmpty()) continue;
+			next = definitions.iterator().next();
+			definitions.clear();
+
+			new ExpandAliasesAndVars().execute(next.getType(), rootType);
+		}
+		return true;
+	}
+
+	@Override
+	public TypeDefinition next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		final TypeDefinition res = next;
+		next = null;
+		return res;
+	}
+
+	/**
+	 * Return the remaining definitions as a sequential stream. Closing the stream closes this reader.
+	 */
+	public Stream<TypeDefinition> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						close();
+					} catch (final IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Filters out the tokens which are not on the default channel (e.g comments), since unlike
+	 * {@code CommonTokenStream}, {@code UnbufferedTokenStream} does not.
+	 */
+	private static class DefaultChannelTokenSource implements TokenSource {
+		private final TokenSource source;
+
+		public DefaultChannelTokenSource(TokenSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public Token nextToken() {
+			Token token;
+			do {
+				token = source.nextToken();
+			} while (token.getChannel() != Token.DEFAULT_CHANNEL && token.getType() != Token.EOF);
+			return token;
+		}
+
+		@Override
+		public int getLine() {
+			return source.getLine();
+		}
+
+		@Override
+		public int getCharPositionInLine() {
+			return source.getCharPositionInLine();
+		}
+
+		@Override
+		public CharStream getInputStream() {
+			return source.getInputStream();
+		}
+
+		@Override
+		public String getSourceName() {
+			return source.getSourceName();
+		}
+
+		@Override
+		public void setTokenFactory(TokenFactory<?> factory) {
+			source.setTokenFactory(factory);
+		}
+
+		@Override
+		public TokenFactory<?> getTokenFactory() {
+			return source.getTokenFactory();
+		}
+	}
+}
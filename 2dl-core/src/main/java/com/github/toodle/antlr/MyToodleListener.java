@@ -1,18 +1,15 @@
 package com.github.toodle.antlr;
 
-import java.math.BigDecimal;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ErrorNode;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.unbescape.java.JavaEscape;
 
 import com.github.toodle.ToodleLexer;
 import com.github.toodle.ToodleListener;
@@ -33,22 +30,85 @@ import com.github.toodle.model.Type;
 import com.github.toodle.model.TypeAnnotation;
 import com.github.toodle.model.TypeDefinition;
 import com.github.toodle.model.Var;
-
+import com.github.toodle.parser.StringLiterals;
+
+/**
+ * Builds the model while parsing, when registered as a parse listener.
+ * <p>
+ * The model is built from the tokens and the start token of each rule only, so that the parser does not need to
+ * build a parse tree (see {@link org.antlr.v4.runtime.Parser#setBuildParseTree(boolean)}).
+ */
 public class MyToodleListener implements ToodleListener {
 	public static final String ROOT_TYPE_NAME = "$root";
+	private final String fileName;
 	private final Type rootType = new Type(ROOT_TYPE_NAME, null);
 	private Type currentType = rootType;
 	private TypeAnnotation currentTypeAnnotation;
 	private Expr currentVarValue;
 	private final Deque<Scope> scopes = new ArrayDeque<>();
+	// identifiers of the definitions being parsed, and the type enclosing them
+	private final Deque<PendingDefinition> definitions = new ArrayDeque<>();
+	// elements of the arrays being parsed
+	private final Deque<List<Expr>> arrays = new ArrayDeque<>();
+	private String aliasName;
+	private String varName;
 	private static final String variablePrefix = "$";
 
 	public enum Scope {
 		TYPE_DEFINITION, TYPE_PARAM, ALIAS_DEFINITION, VAR_DEFINITION
 	}
 
+	private static class PendingDefinition {
+		private final Type enclosingType;
+		private final List<String> identifiers = new ArrayList<>();
+
+		public PendingDefinition(Type enclosingType) {
+			this.enclosingType = enclosingType;
+		}
+	}
+
+	/**
+	 * @param fileName The name of the parsed file, used in the source location of definitions.
+	 */
+	public MyToodleListener(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public MyToodleListener() {
+		this("");
+	}
+
 	@Override
 	public void visitTerminal(TerminalNode node) {
+		final Token token = node.getSymbol();
+		final ParseTree parent = node.getParent();
+		switch (token.getType()) {
+		case ToodleLexer.IDENT:
+			if (parent instanceof DefinitionContext) {
+				definitions.peek().identifiers.add(token.getText());
+			} else if (parent instanceof Alias_definitionContext) {
+				aliasName = token.getText();
+			} else if (parent instanceof StringContext) {
+				addExpr(new Expr(token.getText()));
+			}
+			break;
+		case ToodleLexer.VARIABLE:
+			if (parent instanceof Let_definitionContext) {
+				varName = token.getText().substring(variablePrefix.length());
+			} else if (parent instanceof ExprContext) {
+				addExpr(new Expr(new Var(token.getText().substring(variablePrefix.length()))));
+			}
+			break;
+		case ToodleLexer.NUMBER:
+			addExpr(Expr.parseNumber(token.getText()));
+			break;
+		case ToodleLexer.QUOTED_STRING:
+		case ToodleLexer.MULTILINE_STRING:
+			addExpr(StringLiterals.toExpr(token.getText()));
+			break;
+		default:
+			break;
+		}
 	}
 
 	@Override
@@ -74,73 +134,40 @@ public class MyToodleListener implements ToodleListener {
 
 	@Override
 	public void enterDefinition(DefinitionContext ctx) {
+		definitions.push(new PendingDefinition(currentType));
 	}
 
 	@Override
 	public void exitDefinition(DefinitionContext ctx) {
-		final List<TerminalNode> tokens = ctx.getTokens(ToodleLexer.IDENT);
-		final List<String> modifiers = tokens.subList(0, tokens.size() - 1).stream().map(TerminalNode::getText)
-				.collect(Collectors.toList());
-		final String name = tokens.get(tokens.size() - 1).getText();
+		final PendingDefinition pending = definitions.pop();
+		final List<String> identifiers = pending.identifiers;
+		final List<String> modifiers = new ArrayList<>(identifiers.subList(0, identifiers.size() - 1));
+		final String name = identifiers.get(identifiers.size() - 1);
 
 		// definitions may or may not have a type
-		if (ctx.getChildCount() > 2) {
+		if (currentType != pending.enclosingType) {
 			final Type parent = currentType.getParent();
 			if (parent == null) {
 				System.out.println("null");
 			}
 
 			final TypeDefinition definition = new TypeDefinition(name, modifiers, currentType);
-			definition.setLocation(new SourceLocation("", ctx.start.getLine()));
+			definition.setLocation(new SourceLocation(fileName, ctx.start.getLine()));
 			parent.getSubDefinitions().add(definition);
 			currentType = parent;
 		}
 	}
 
-	private Expr ctxToExpr(Object ctx) {
-		final Pattern trimMultilineString = Pattern.compile("^[ \t]+\\|", Pattern.MULTILINE);
-		if (ctx instanceof StringContext) {
-			final StringContext child_ctx = (StringContext) ctx;
-			String s = child_ctx.getText();
-			if (s.startsWith("\"\"\"")) {
-				s = s.substring(3, s.length() - 3);
-				s = trimMultilineString.matcher(s).replaceAll("");
-				if (s.startsWith("\n")) s = s.substring(1);
-				if (s.endsWith("\n")) s = s.substring(0, s.length() - 1);
-				s = JavaEscape.unescapeJava(s);
-			} else if (s.startsWith("\"")) {
-				s = JavaEscape.unescapeJava(s.substring(1, s.length() - 1));
-			}
-			return new Expr(s);
-
-		} else if (ctx instanceof ExprContext) {
-			final ExprContext ctx_expr = (ExprContext) ctx;
-			final Expr child = ctxToExpr(ctx_expr.getChild(0));
-			return child;
-
-		} else if (ctx instanceof ArrayContext) {
-			final ArrayContext ctx_array = (ArrayContext) ctx;
-			final List<Expr> children = new ArrayList<>();
-			// ignore 1st and last token ('[' and ']')
-			for (int i = 1; i < ctx_array.getChildCount() - 1; i++) {
-				final ParseTree child = ctx_array.getChild(i);
-				children.add(ctxToExpr(child));
-			}
-			return new Expr(children);
-
-		} else if (ctx instanceof TerminalNode) {
-			final TerminalNode terminalNode = (TerminalNode) ctx;
-			final int terminalType = terminalNode.getSymbol().getType();
-			if (terminalType == ToodleLexer.NUMBER) {
-				return new Expr(new BigDecimal(terminalNode.getText()));
-			} else if (terminalType == ToodleLexer.VARIABLE) {
-				return new Expr(new Var(terminalNode.getText().substring(variablePrefix.length())));
-			} else {
-				throw new RuntimeException("Unexpected token: " + terminalNode.getSymbol().getText());
-			}
-
+	/**
+	 * Add an expression to the array being parsed, or else to the current var definition or annotation.
+	 */
+	private void addExpr(Expr expr) {
+		if (!arrays.isEmpty()) {
+			arrays.peek().add(expr);
+		} else if (scopes.peek() == Scope.VAR_DEFINITION) {
+			currentVarValue = expr;
 		} else {
-			throw new RuntimeException("Unknown type: " + ctx.getClass());
+			currentTypeAnnotation.getExprParams_mutable().add(expr);
 		}
 	}
 
@@ -166,7 +193,7 @@ public class MyToodleListener implements ToodleListener {
 
 	@Override
 	public void exitType(TypeContext ctx) {
-		final String name = ctx.getChild(0).getText();
+		final String name = ctx.start.getText();
 		currentType.setName(name);
 
 		if (scopes.peek() == Scope.TYPE_PARAM) {
@@ -181,7 +208,7 @@ public class MyToodleListener implements ToodleListener {
 
 	@Override
 	public void exitAnnotation(AnnotationContext ctx) {
-		final String name = ctx.getChild(0).getText();
+		final String name = ctx.start.getText();
 		currentTypeAnnotation.setName(name);
 		currentType.getAnnotations().put(name, currentTypeAnnotation);
 	}
@@ -192,11 +219,7 @@ public class MyToodleListener implements ToodleListener {
 
 	@Override
 	public void exitExpr(ExprContext ctx) {
-		if (scopes.peek() == Scope.VAR_DEFINITION) {
-			currentVarValue = ctxToExpr(ctx);
-		} else {
-			currentTypeAnnotation.getExprParams_mutable().add(ctxToExpr(ctx));
-		}
+		// expressions are built from tokens, see visitTerminal
 	}
 
 	public Type getRootType() {
@@ -232,9 +255,8 @@ public class MyToodleListener implements ToodleListener {
 
 	@Override
 	public void exitAlias_definition(Alias_definitionContext ctx) {
-		final String aliasName = ctx.getToken(ToodleLexer.IDENT, 0).getText();
 		final Type parent = currentType.getParent();
-		parent.addAliasDefinition(aliasName, currentType);
+		parent.addAliasDefinition(aliasName, currentType, new SourceLocation(fileName, ctx.start.getLine()));
 		currentType = parent;
 		final Scope popped = scopes.pop();
 		assert popped == Scope.ALIAS_DEFINITION;
@@ -250,19 +272,16 @@ public class MyToodleListener implements ToodleListener {
 	public void exitLet_definition(Let_definitionContext ctx) {
 		final Scope popped = scopes.pop();
 		assert popped == Scope.VAR_DEFINITION;
-		final String name = ctx.getToken(ToodleLexer.VARIABLE, 0).getText().substring(variablePrefix.length());
-		currentType.addVarDefinition(name, currentVarValue);
-
+		currentType.addVarDefinition(varName, currentVarValue, new SourceLocation(fileName, ctx.start.getLine()));
 	}
 
 	@Override
 	public void enterArray(ArrayContext ctx) {
-		// TODO Auto-generated method stub
-
+		arrays.push(new ArrayList<>());
 	}
 
 	@Override
 	public void exitArray(ArrayContext ctx) {
-		// TODO Auto-generated method stub
+		addExpr(Expr.packList(arrays.pop()));
 	}
 }
@@ -0,0 +1,37 @@
+package com.github.toodle.antlr;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+import com.github.toodle.ToodleLexer;
+import com.github.toodle.model.Symbols;
+
+/**
+ * Creates tokens whose identifiers are canonical instances (see {@link Symbols}).
+ */
+public class SymbolTokenFactory extends CommonTokenFactory {
+	private final Symbols.Cache symbols = new Symbols.Cache();
+
+	/**
+	 * @param copyText Whether the text of tokens must be copied, see
+	 *        {@link CommonTokenFactory#CommonTokenFactory(boolean)}.
+	 */
+	public SymbolTokenFactory(boolean copyText) {
+		super(copyText);
+	}
+
+	public SymbolTokenFactory() {
+		this(false);
+	}
+
+	@Override
+	public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel, int start,
+			int stop, int line, int charPositionInLine) {
+		final CommonToken token = super.create(source, type, text, channel, start, stop, line, charPositionInLine);
+		if (type == ToodleLexer.IDENT) token.setText(symbols.intern(token.getText()));
+		return token;
+	}
+}
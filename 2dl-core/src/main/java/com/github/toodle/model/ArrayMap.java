@@ -0,0 +1,223 @@
+package com.github.toodle.model;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A map of a few entries, stored as a single array of alternating keys and values, in insertion order. Operations
+ * are linear in the number of entries. An empty map does not allocate an array.
+ */
+final class ArrayMap<K, V> extends AbstractMap<K, V> {
+	private static final Object[] EMPTY = {};
+	private Object[] table = EMPTY;
+	private int size;
+	private int modCount;
+	private boolean frozen;
+
+	private int indexOf(Object key) {
+		for (int i = 0; i < size * 2; i += 2) {
+			// keys are usually interned symbols
+			if (table[i] == key) return i;
+		}
+		for (int i = 0; i < size * 2; i += 2) {
+			if (Objects.equals(table[i], key)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Make this map unmodifiable.
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		final int i = indexOf(key);
+		return i < 0 ? null : (V) table[i + 1];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		checkNotFrozen();
+		final int i = indexOf(key);
+		if (i >= 0) {
+			final V res = (V) table[i + 1];
+			table[i + 1] = value;
+			return res;
+		}
+		if (size * 2 == table.length) table = Arrays.copyOf(table, Math.max(2, size * 4));
+		table[size * 2] = key;
+		table[size * 2 + 1] = value;
+		size++;
+		modCount++;
+		return null;
+	}
+
+	@Override
+	public V remove(Object key) {
+		final int i = indexOf(key);
+		return i < 0 ? null : removeAt(i);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V removeAt(int i) {
+		checkNotFrozen();
+		final V res = (V) table[i + 1];
+		System.arraycopy(table, i + 2, table, i, size * 2 - i - 2);
+		size--;
+		table[size * 2] = null;
+		table[size * 2 + 1] = null;
+		modCount++;
+		return res;
+	}
+
+	@Override
+	public void clear() {
+		checkNotFrozen();
+		table = EMPTY;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new AbstractSet<Entry<K, V>>() {
+			@Override
+			public Iterator<Entry<K, V>> iterator() {
+				return new TableIterator<Entry<K, V>>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					protected Entry<K, V> element(int i) {
+						return new SimpleEntry<K, V>((K) table[i], (V) table[i + 1]) {
+							private static final long serialVersionUID = 1L;
+
+							@Override
+							public V setValue(V value) {
+								checkNotFrozen();
+								table[i + 1] = value;
+								return super.setValue(value);
+							}
+						};
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	// the key and value views read the table directly, without allocating an entry per element
+
+	@Override
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return new TableIterator<K>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					protected K element(int i) {
+						return (K) table[i];
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new TableIterator<V>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					protected V element(int i) {
+						return (V) table[i + 1];
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private abstract class TableIterator<T> implements Iterator<T> {
+		// index of the key of the next entry
+		private int next = 0;
+		private int expectedModCount = modCount;
+		private boolean canRemove = false;
+
+		/**
+		 * Return the element of the entry whose key is at index {@code i} of the table.
+		 */
+		protected abstract T element(int i);
+
+		@Override
+		public boolean hasNext() {
+			return next < size * 2;
+		}
+
+		@Override
+		public T next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			if (!hasNext()) throw new NoSuchElementException();
+			final int i = next;
+			next += 2;
+			canRemove = true;
+			return element(i);
+		}
+
+		@Override
+		public void remove() {
+			if (!canRemove) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			next -= 2;
+			removeAt(next);
+			expectedModCount = modCount;
+			canRemove = false;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.github.toodle.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A set of a few elements, stored as an array, in insertion order. Operations are linear in the number of elements.
+ * An empty set does not allocate an array.
+ */
+final class ArraySet<E> extends AbstractSet<E> {
+	private static final Object[] EMPTY = {};
+	private Object[] elements = EMPTY;
+	private int size;
+	private int modCount;
+	private boolean frozen;
+
+	public ArraySet(Collection<? extends E> elements) {
+		if (elements.isEmpty()) return;
+		this.elements = new Object[elements.size()];
+		addAll(elements);
+	}
+
+	private int indexOf(Object element) {
+		for (int i = 0; i < size; i++) {
+			if (elements[i] == element) return i;
+		}
+		for (int i = 0; i < size; i++) {
+			if (Objects.equals(elements[i], element)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Make this set unmodifiable.
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object element) {
+		return indexOf(element) >= 0;
+	}
+
+	@Override
+	public boolean add(E element) {
+		checkNotFrozen();
+		if (indexOf(element) >= 0) return false;
+		if (size == elements.length) elements = Arrays.copyOf(elements, Math.max(1, size * 2));
+		elements[size++] = element;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object element) {
+		final int i = indexOf(element);
+		if (i < 0) return false;
+		removeAt(i);
+		return true;
+	}
+
+	private void removeAt(int i) {
+		checkNotFrozen();
+		System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+		elements[--size] = null;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		checkNotFrozen();
+		elements = EMPTY;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private int next = 0;
+			private int expectedModCount = modCount;
+			private boolean canRemove = false;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public E next() {
+				if (modCount != expectedModCount) throw new ConcurrentModificationException();
+				if (!hasNext()) throw new NoSuchElementException();
+				canRemove = true;
+				return (E) elements[next++];
+			}
+
+			@Override
+			public void remove() {
+				if (!canRemove) throw new IllegalStateException();
+				if (modCount != expectedModCount) throw new ConcurrentModificationException();
+				removeAt(--next);
+				expectedModCount = modCount;
+				canRemove = false;
+			}
+		};
+	}
+}
@@ -0,0 +1,28 @@
+package com.github.toodle.model;
+
+/**
+ * Computes 64-bit content hashes, which only depend on the hashed values, so that they are the same across runs and
+ * can be persisted.
+ */
+final class ContentHash {
+	static final long SEED = 0xcbf29ce484222325L;
+	private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+	private static final long NULL = 0x5bd1e9955bd1e995L;
+
+	private ContentHash() {
+	}
+
+	static long add(long hash, long value) {
+		final long res = (hash + value) * MULTIPLIER;
+		return res ^ (res >>> 31);
+	}
+
+	static long add(long hash, String value) {
+		if (value == null) return add(hash, NULL);
+		long res = add(hash, value.length());
+		for (int i = 0; i < value.length(); i++) {
+			res = add(res, value.charAt(i));
+		}
+		return res;
+	}
+}
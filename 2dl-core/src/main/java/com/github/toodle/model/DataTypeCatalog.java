@@ -86,7 +86,7 @@ public class DataTypeCatalog {
 		} else if (typeName.equals(BuiltinCatalog.TYPE_NUMBER)) {
 			return expr.isBigDecimal();
 		} else if (typeName.equals(BuiltinCatalog.TYPE_BOOL)) {
-			return expr.getAsBoolean();
+			return expr.isBoolean();
 		}
 		return true;
 	}
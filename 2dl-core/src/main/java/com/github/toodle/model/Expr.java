@@ -1,36 +1,161 @@
 package com.github.toodle.model;
 
 import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * A string, number, variable or list expression.
+ * <p>
+ * Numbers whose value fits in a {@code long}, or round-trips exactly through a {@code double}, are stored
+ * unboxed; other numbers are stored as {@link BigDecimal}. All numbers are seen as {@link BigDecimal} through
+ * {@link #getAsBigDecimal()} and {@link #getAsObject()}. Type predicates ({@code isXxx}) never throw.
+ * <p>
+ * Lists created by {@link #packList(List)} whose elements are all unboxed {@code long}s, all unboxed
+ * {@code double}s or all strings are stored as a single array. {@link #getAsList()} returns an unmodifiable view of
+ * such lists, which creates element expressions on access.
+ */
 public class Expr {
-	// Possible types: BigDecimal, String, Var, List
-	private final Object value;
+	private static final byte TAG_STRING = 0;
+	private static final byte TAG_LONG = 1;
+	private static final byte TAG_DOUBLE = 2;
+	private static final byte TAG_BIG_DECIMAL = 3;
+	private static final byte TAG_VAR = 4;
+	private static final byte TAG_LIST = 5;
+	// longest literal of digits that always fits in a long
+	private static final int MAX_LONG_DIGITS = 18;
+	private static final BigDecimal INT_MIN = BigDecimal.valueOf(Integer.MIN_VALUE);
+	private static final BigDecimal INT_MAX = BigDecimal.valueOf(Integer.MAX_VALUE);
+	private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+	private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
 
-	public Expr(String value) {
-		Objects.requireNonNull(value);
+	private final byte tag;
+	// the value of TAG_LONG, or the raw bits of the value of TAG_DOUBLE
+	private final long bits;
+	// Possible types: BigDecimal, String, Var, List, or Supplier<String> for a string not decoded yet, or long[],
+	// double[] or String[] for a packed list
+	private Object value;
+
+	private Expr(byte tag, long bits, Object value) {
+		this.tag = tag;
+		this.bits = bits;
 		this.value = value;
 	}
 
+	public Expr(String value) {
+		this(TAG_STRING, 0, Objects.requireNonNull(value));
+	}
+
+	/**
+	 * Create a string expression whose value is computed by {@code value} on first access, and then cached. The
+	 * supplier may be called more than once if the expression is accessed concurrently, so it must always return
+	 * equal values.
+	 */
+	public Expr(Supplier<String> value) {
+		this(TAG_STRING, 0, Objects.requireNonNull(value));
+	}
+
 	public Expr(BigDecimal value) {
-		Objects.requireNonNull(value);
-		this.value = value;
+		this(TAG_BIG_DECIMAL, 0, Objects.requireNonNull(value));
+	}
+
+	public Expr(long value) {
+		this(TAG_LONG, value, null);
+	}
+
+	/**
+	 * @param value A finite value. {@link #getAsBigDecimal()} will return {@link BigDecimal#valueOf(double)}.
+	 */
+	public Expr(double value) {
+		this(TAG_DOUBLE, Double.doubleToRawLongBits(checkFinite(value)), null);
 	}
 
 	public Expr(Var value) {
-		Objects.requireNonNull(value);
-		this.value = value;
+		this(TAG_VAR, 0, Objects.requireNonNull(value));
 	}
 
 	public Expr(List<Expr> value) {
-		Objects.requireNonNull(value);
-		this.value = value;
+		this(TAG_LIST, 0, Objects.requireNonNull(value));
+	}
+
+	/**
+	 * Create a list expression, stored as a packed array if its elements allow it. The elements must not be modified
+	 * afterwards. String elements are decoded when packed.
+	 */
+	public static Expr packList(List<Expr> elements) {
+		if (elements.isEmpty()) return new Expr(elements);
+		final byte elementTag = elements.get(0).tag;
+		for (final Expr element : elements) {
+			if (element.tag != elementTag) return new Expr(elements);
+		}
+		final int size = elements.size();
+		switch (elementTag) {
+		case TAG_LONG:
+			final long[] longs = new long[size];
+			for (int i = 0; i < size; i++) {
+				longs[i] = elements.get(i).bits;
+			}
+			return new Expr(TAG_LIST, 0, longs);
+		case TAG_DOUBLE:
+			final double[] doubles = new double[size];
+			for (int i = 0; i < size; i++) {
+				doubles[i] = elements.get(i).getAsDouble();
+			}
+			return new Expr(TAG_LIST, 0, doubles);
+		case TAG_STRING:
+			final String[] strings = new String[size];
+			for (int i = 0; i < size; i++) {
+				strings[i] = elements.get(i).getAsString();
+			}
+			return new Expr(TAG_LIST, 0, strings);
+		default:
+			return new Expr(elements);
+		}
+	}
+
+	/**
+	 * Create a number expression from a number literal, without creating a {@link BigDecimal} unless the value
+	 * cannot be stored exactly in a {@code long} or a {@code double}.
+	 * @throws NumberFormatException if the literal is not a valid number.
+	 */
+	public static Expr parseNumber(String literal) {
+		if (isIntegerLiteral(literal)) return new Expr(Long.parseLong(literal));
+		if (literal.indexOf('.') >= 0) {
+			final double d = Double.parseDouble(literal);
+			// BigDecimal.valueOf(d) is based on Double.toString(d), so the value round-trips exactly
+			if (Double.toString(d).equals(literal)) return new Expr(d);
+		}
+		return new Expr(new BigDecimal(literal));
+	}
+
+	private static boolean isIntegerLiteral(String literal) {
+		final int start = literal.startsWith("-") ? 1 : 0;
+		final int length = literal.length() - start;
+		if (length == 0 || length > MAX_LONG_DIGITS) return false;
+		for (int i = start; i < literal.length(); i++) {
+			final char c = literal.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+		return true;
+	}
+
+	private static double checkFinite(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException("Not a finite number: " + value);
+		}
+		return value;
 	}
 
 	public String toLiteral() {
-		if (isBigDecimal()) {
+		if (tag == TAG_LONG) {
+			return Long.toString(bits);
+		} else if (isBigDecimal()) {
 			return getAsBigDecimal().toPlainString();
 		} else if (isString()) {
 			// TODO escape
@@ -40,49 +165,113 @@ public class Expr {
 		} else if (isList()) {
 			return "[" + getAsList().stream().map(Expr::toLiteral).collect(Collectors.joining(" ")) + "]";
 		} else {
-			throw new IllegalArgumentException("Unknown type: " + value.getClass());
+			throw new IllegalArgumentException("Unknown type: " + getValue().getClass());
+		}
+	}
+
+	private Object getValue() {
+		Object res = value;
+		if (res instanceof Supplier) {
+			res = Objects.requireNonNull(((Supplier<?>) res).get());
+			value = res;
 		}
+		return res;
+	}
+
+	private RuntimeException cannotCast(String typeName) {
+		final Object value = getAsObject();
+		return new RuntimeException(String.format("Expression '%s' of type %s cannot be cast to %s", value,
+				value.getClass().getSimpleName(), typeName));
 	}
 
 	public boolean isList() {
-		return value instanceof List;
+		return tag == TAG_LIST;
 	}
 
 	@SuppressWarnings("unchecked")
 	public List<Expr> getAsList() {
-		if (value instanceof List) {
-			return (List<Expr>) value;
+		if (tag == TAG_LIST) {
+			return value instanceof List ? (List<Expr>) value : new PackedList(value);
 		} else {
-			throw new RuntimeException(String.format("Expression '%s' of type %s cannot be cast to List", value,
-					value.getClass().getSimpleName()));
+			throw cannotCast("List");
 		}
 
 	}
 
+	/**
+	 * Return this expression, or a copy of it whose lists, at any depth, cannot be modified. Packed lists are never
+	 * copied.
+	 */
+	Expr toImmutable() {
+		if (tag != TAG_LIST || !(value instanceof List)) return this;
+		@SuppressWarnings("unchecked")
+		final List<Expr> elements = (List<Expr>) value;
+		final List<Expr> res = new ArrayList<>(elements.size());
+		for (final Expr element : elements) {
+			res.add(element.toImmutable());
+		}
+		return new Expr(Collections.unmodifiableList(res));
+	}
+
+	/**
+	 * A view of a packed list.
+	 */
+	private static class PackedList extends AbstractList<Expr> implements RandomAccess {
+		private final Object array;
+
+		public PackedList(Object array) {
+			this.array = array;
+		}
+
+		@Override
+		public Expr get(int index) {
+			if (array instanceof long[]) {
+				return new Expr(((long[]) array)[index]);
+			} else if (array instanceof double[]) {
+				return new Expr(((double[]) array)[index]);
+			} else {
+				return new Expr(((String[]) array)[index]);
+			}
+		}
+
+		@Override
+		public int size() {
+			if (array instanceof long[]) {
+				return ((long[]) array).length;
+			} else if (array instanceof double[]) {
+				return ((double[]) array).length;
+			} else {
+				return ((String[]) array).length;
+			}
+		}
+	}
+
 	public boolean isString() {
-		return value instanceof String;
+		return tag == TAG_STRING;
 	}
 
 	public String getAsString() {
-		if (value instanceof String) {
-			return (String) value;
+		if (tag == TAG_STRING) {
+			return (String) getValue();
 		} else {
-			throw new RuntimeException(String.format("Expression '%s' of type %s cannot be cast to String", value,
-					value.getClass().getSimpleName()));
+			throw cannotCast("String");
 		}
 	}
 
 	public Object getAsObject() {
-		return value;
+		switch (tag) {
+		case TAG_LONG:
+		case TAG_DOUBLE:
+			return getAsBigDecimal();
+		default:
+			return getValue();
+		}
 	}
 
 	public boolean isBoolean() {
-		try {
-			getAsBoolean();
-			return true;
-		} catch (final RuntimeException e) {
-			return false;
-		}
+		if (tag != TAG_STRING) return false;
+		final String value = getAsString();
+		return value.equals("true") || value.equals("false");
 	}
 
 	public boolean getAsBoolean() {
@@ -101,49 +290,161 @@ public class Expr {
 	}
 
 	public boolean isVar() {
-		return value instanceof Var;
+		return tag == TAG_VAR;
 	}
 
 	public Var getAsVar() {
-		if (value instanceof Var) {
+		if (tag == TAG_VAR) {
 			return (Var) value;
 		} else {
-			throw new RuntimeException(String.format("Expression '%s' of type %s cannot be cast to Var", value,
-					value.getClass().getSimpleName()));
+			throw cannotCast("Var");
 		}
 	}
 
 	public boolean isInt() {
-		try {
-			getAsInt();
-			return true;
-		} catch (final ArithmeticException e) {
+		switch (tag) {
+		case TAG_LONG:
+			return bits == (int) bits;
+		case TAG_DOUBLE:
+			final double d = Double.longBitsToDouble(bits);
+			return d == Math.rint(d) && d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE;
+		case TAG_BIG_DECIMAL:
+			return isIntegral((BigDecimal) value) && isBetween((BigDecimal) value, INT_MIN, INT_MAX);
+		default:
 			return false;
 		}
 	}
 
 	public int getAsInt() {
+		if (tag == TAG_LONG) return Math.toIntExact(bits);
 		return getAsBigDecimal().intValueExact();
 	}
 
+	/**
+	 * Return whether this expression is a number with an integral value that fits in a {@code long}.
+	 */
+	public boolean isLong() {
+		switch (tag) {
+		case TAG_LONG:
+			return true;
+		case TAG_DOUBLE:
+			final double d = Double.longBitsToDouble(bits);
+			return d == Math.rint(d) && d >= -0x1p63 && d < 0x1p63;
+		case TAG_BIG_DECIMAL:
+			return isIntegral((BigDecimal) value) && isBetween((BigDecimal) value, LONG_MIN, LONG_MAX);
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isIntegral(BigDecimal value) {
+		return value.scale() <= 0 || value.signum() == 0 || value.stripTrailingZeros().scale() <= 0;
+	}
+
+	private static boolean isBetween(BigDecimal value, BigDecimal min, BigDecimal max) {
+		return value.compareTo(min) >= 0 && value.compareTo(max) <= 0;
+	}
+
 	public long getAsLong() {
+		if (tag == TAG_LONG) return bits;
 		return getAsBigDecimal().longValueExact();
 	}
 
+	/**
+	 * Return the value of this number, rounded to the nearest {@code double} if needed.
+	 */
+	public double getAsDouble() {
+		switch (tag) {
+		case TAG_LONG:
+			return bits;
+		case TAG_DOUBLE:
+			return Double.longBitsToDouble(bits);
+		default:
+			return getAsBigDecimal().doubleValue();
+		}
+	}
+
 	public boolean isPrimitive() {
 		return isBigDecimal() || isString() || isVar();
 	}
 
+	/**
+	 * Return whether this expression is a number, whatever its representation.
+	 */
 	public boolean isBigDecimal() {
-		return value instanceof BigDecimal;
+		return tag == TAG_LONG || tag == TAG_DOUBLE || tag == TAG_BIG_DECIMAL;
 	}
 
 	public BigDecimal getAsBigDecimal() {
-		if (value instanceof BigDecimal) {
-			return ((BigDecimal) value);
-		} else {
-			throw new RuntimeException(String.format("Expression '%s' of type %s cannot be cast to BigDecimal", value,
-					value.getClass().getSimpleName()));
+		switch (tag) {
+		case TAG_LONG:
+			return BigDecimal.valueOf(bits);
+		case TAG_DOUBLE:
+			return BigDecimal.valueOf(Double.longBitsToDouble(bits));
+		case TAG_BIG_DECIMAL:
+			return (BigDecimal) value;
+		default:
+			throw cannotCast("BigDecimal");
+		}
+	}
+
+	/**
+	 * Return whether {@code o} is an expression of the same kind with the same value. Numbers are equal if they have
+	 * the same value and scale as {@link BigDecimal}, whatever their representation, and packed lists are equal to
+	 * unpacked lists with the same elements.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Expr)) return false;
+		final Expr other = (Expr) o;
+		if (tag == TAG_LONG && other.tag == TAG_LONG) return bits == other.bits;
+		if (isBigDecimal()) return other.isBigDecimal() && getAsBigDecimal().equals(other.getAsBigDecimal());
+		if (tag != other.tag) return false;
+		switch (tag) {
+		case TAG_STRING:
+			return getAsString().equals(other.getAsString());
+		case TAG_VAR:
+			return getAsVar().getName().equals(other.getAsVar().getName());
+		default:
+			return getAsList().equals(other.getAsList());
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		switch (tag) {
+		case TAG_STRING:
+			return getAsString().hashCode();
+		case TAG_VAR:
+			return 31 * getAsVar().getName().hashCode() + 1;
+		case TAG_LIST:
+			return getAsList().hashCode();
+		default:
+			return getAsBigDecimal().hashCode();
+		}
+	}
+
+	/**
+	 * Return a content hash consistent with {@link #equals(Object)}.
+	 */
+	long contentHash() {
+		final long res = ContentHash.add(ContentHash.SEED, isBigDecimal() ? TAG_BIG_DECIMAL : tag);
+		switch (tag) {
+		case TAG_STRING:
+			return ContentHash.add(res, getAsString());
+		case TAG_VAR:
+			return ContentHash.add(res, getAsVar().getName());
+		case TAG_LIST:
+			long listHash = res;
+			for (final Expr element : getAsList()) {
+				listHash = ContentHash.add(listHash, element.contentHash());
+			}
+			return listHash;
+		case TAG_LONG:
+			return ContentHash.add(res, Long.toString(bits));
+		default:
+			return ContentHash.add(res, getAsBigDecimal().toString());
 		}
 	}
 
@@ -0,0 +1,276 @@
+package com.github.toodle.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable {@link Type}, and the root of an immutable model.
+ * <p>
+ * The {@code withXxx} methods return a new version of the type, which shares everything but the modified field with
+ * this one. {@link #update(List, UnaryOperator)} and {@link #transform(UnaryOperator)} copy only the path from the
+ * root to the modified types, and the other types are shared by both versions. Keeping a previous version of a model
+ * is thus enough to roll back to it.
+ * <p>
+ * Unlike {@link Type}, an immutable type does not know its parent, since it may belong to several models.
+ */
+public final class ImmutableType {
+	private final String name;
+	private final PersistentList<ImmutableType> typeParams;
+	private final Map<String, ImmutableTypeAnnotation> annotations;
+	private final PersistentList<ImmutableTypeDefinition> subDefinitions;
+	private final Map<String, ImmutableType> aliasDefinitions;
+	private final Map<String, Expr> varDefinitions;
+
+	private ImmutableType(String name, PersistentList<ImmutableType> typeParams,
+			Map<String, ImmutableTypeAnnotation> annotations, PersistentList<ImmutableTypeDefinition> subDefinitions,
+			Map<String, ImmutableType> aliasDefinitions, Map<String, Expr> varDefinitions) {
+		this.name = name;
+		this.typeParams = typeParams;
+		this.annotations = annotations;
+		this.subDefinitions = subDefinitions;
+		this.aliasDefinitions = aliasDefinitions;
+		this.varDefinitions = varDefinitions;
+	}
+
+	public ImmutableType(String name) {
+		this(name, PersistentList.empty(), Collections.emptyMap(), PersistentList.empty(), Collections.emptyMap(),
+				Collections.emptyMap());
+	}
+
+	/**
+	 * Return an immutable copy of a mutable model. Annotations shared by several types of the mutable model, e.g
+	 * added by the expansion of aliases, are shared by the copy.
+	 */
+	public static ImmutableType of(Type type) {
+		return of(type, new IdentityHashMap<>());
+	}
+
+	private static ImmutableType of(Type type, Map<TypeAnnotation, ImmutableTypeAnnotation> sharedAnnotations) {
+		final List<ImmutableType> typeParams = new ArrayList<>(type.getTypeParams().size());
+		for (final Type typeParam : type.getTypeParams()) {
+			typeParams.add(of(typeParam, sharedAnnotations));
+		}
+		final Map<String, ImmutableTypeAnnotation> annotations = new LinkedHashMap<>();
+		for (final Entry<String, TypeAnnotation> e : type.getAnnotations().entrySet()) {
+			annotations.put(e.getKey(), sharedAnnotations.computeIfAbsent(e.getValue(), ImmutableTypeAnnotation::of));
+		}
+		final List<ImmutableTypeDefinition> subDefinitions = new ArrayList<>(type.getSubDefinitions().size());
+		for (final TypeDefinition definition : type.getSubDefinitions()) {
+			final ImmutableType definitionType = definition.getType() == null ? null
+					: of(definition.getType(), sharedAnnotations);
+			subDefinitions.add(new ImmutableTypeDefinition(definition.getName(), definition.getModifiers(),
+					definitionType, definition.getLocation()));
+		}
+		final Map<String, ImmutableType> aliasDefinitions = new LinkedHashMap<>();
+		for (final AliasDefinition alias : type.getAliasDefinitions()) {
+			aliasDefinitions.put(alias.getName(), of(alias.getValue(), sharedAnnotations));
+		}
+		final Map<String, Expr> varDefinitions = new LinkedHashMap<>();
+		for (final VarDefinition var : type.getVarDefinitions()) {
+			varDefinitions.put(var.getName(), var.getValue().toImmutable());
+		}
+		return new ImmutableType(type.getName(), PersistentList.of(typeParams), unmodifiable(annotations),
+				PersistentList.of(subDefinitions), unmodifiable(aliasDefinitions), unmodifiable(varDefinitions));
+	}
+
+	private static <K, V> Map<K, V> unmodifiable(Map<K, V> map) {
+		return map.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Return a new mutable model with the same content. Each type of the mutable model gets its own annotations, so
+	 * that modifying the annotations of a type does not modify other types.
+	 */
+	public Type toType() {
+		return toType(null);
+	}
+
+	private Type toType(Type parent) {
+		final Type res = new Type(name, parent);
+		for (final ImmutableType typeParam : typeParams) {
+			res.getTypeParams().add(typeParam.toType(res));
+		}
+		for (final ImmutableTypeAnnotation annotation : annotations.values()) {
+			res.getAnnotations().put(annotation.getName(), annotation.toTypeAnnotation());
+		}
+		for (final ImmutableTypeDefinition definition : subDefinitions) {
+			final Type definitionType = definition.getType() == null ? null : definition.getType().toType(res);
+			final TypeDefinition resDefinition = new TypeDefinition(definition.getName(), definition.getModifiers(),
+					definitionType);
+			resDefinition.setLocation(definition.getLocation());
+			res.getSubDefinitions().add(resDefinition);
+		}
+		aliasDefinitions.forEach((aliasName, value) -> res.addAliasDefinition(aliasName, value.toType(res)));
+		varDefinitions.forEach(res::addVarDefinition);
+		return res;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<ImmutableType> getTypeParams() {
+		return typeParams;
+	}
+
+	public Map<String, ImmutableTypeAnnotation> getAnnotations() {
+		return annotations;
+	}
+
+	public ImmutableTypeAnnotation getAnnotation(String annotationName) {
+		return annotations.get(annotationName);
+	}
+
+	public List<ImmutableTypeDefinition> getSubDefinitions() {
+		return subDefinitions;
+	}
+
+	public ImmutableTypeDefinition getSubDefinition(String name) {
+		final int index = indexOfSubDefinition(name);
+		return index < 0 ? null : subDefinitions.get(index);
+	}
+
+	/**
+	 * Return the index of the first sub-definition with the specified name, or -1.
+	 */
+	public int indexOfSubDefinition(String name) {
+		for (int i = 0; i < subDefinitions.size(); i++) {
+			if (subDefinitions.get(i).getName().equals(name)) return i;
+		}
+		return -1;
+	}
+
+	public Map<String, ImmutableType> getAliasDefinitions() {
+		return aliasDefinitions;
+	}
+
+	public Map<String, Expr> getVarDefinitions() {
+		return varDefinitions;
+	}
+
+	public ImmutableType withName(String name) {
+		return new ImmutableType(name, typeParams, annotations, subDefinitions, aliasDefinitions, varDefinitions);
+	}
+
+	public ImmutableType withTypeParam(int index, ImmutableType typeParam) {
+		return withTypeParams(typeParams.with(index, typeParam));
+	}
+
+	public ImmutableType plusTypeParam(ImmutableType typeParam) {
+		return withTypeParams(typeParams.plus(typeParam));
+	}
+
+	private ImmutableType withTypeParams(PersistentList<ImmutableType> typeParams) {
+		if (typeParams == this.typeParams) return this;
+		return new ImmutableType(name, typeParams, annotations, subDefinitions, aliasDefinitions, varDefinitions);
+	}
+
+	/**
+	 * Return a type with {@code annotation} added, or replacing the annotation with the same name.
+	 */
+	public ImmutableType withAnnotation(ImmutableTypeAnnotation annotation) {
+		final Map<String, ImmutableTypeAnnotation> res = new LinkedHashMap<>(annotations);
+		res.put(annotation.getName(), annotation);
+		return new ImmutableType(name, typeParams, unmodifiable(res), subDefinitions, aliasDefinitions,
+				varDefinitions);
+	}
+
+	public ImmutableType withoutAnnotation(String annotationName) {
+		if (!annotations.containsKey(annotationName)) return this;
+		final Map<String, ImmutableTypeAnnotation> res = new LinkedHashMap<>(annotations);
+		res.remove(annotationName);
+		return new ImmutableType(name, typeParams, unmodifiable(res), subDefinitions, aliasDefinitions,
+				varDefinitions);
+	}
+
+	public ImmutableType withSubDefinition(int index, ImmutableTypeDefinition definition) {
+		return withSubDefinitions(subDefinitions.with(index, definition));
+	}
+
+	public ImmutableType plusSubDefinition(ImmutableTypeDefinition definition) {
+		return withSubDefinitions(subDefinitions.plus(definition));
+	}
+
+	/**
+	 * Return a version without the sub-definition at {@code index}. Removing the last sub-definition takes
+	 * O(log32(n)) time; removing another one copies the list of sub-definitions.
+	 */
+	public ImmutableType minusSubDefinition(int index) {
+		return withSubDefinitions(subDefinitions.minus(index));
+	}
+
+	private ImmutableType withSubDefinitions(PersistentList<ImmutableTypeDefinition> subDefinitions) {
+		if (subDefinitions == this.subDefinitions) return this;
+		return new ImmutableType(name, typeParams, annotations, subDefinitions, aliasDefinitions, varDefinitions);
+	}
+
+	public ImmutableType withAliasDefinition(String aliasName, ImmutableType value) {
+		final Map<String, ImmutableType> res = new LinkedHashMap<>(aliasDefinitions);
+		res.put(aliasName, value);
+		return new ImmutableType(name, typeParams, annotations, subDefinitions, unmodifiable(res), varDefinitions);
+	}
+
+	public ImmutableType withVarDefinition(String varName, Expr value) {
+		final Map<String, Expr> res = new LinkedHashMap<>(varDefinitions);
+		res.put(varName, value.toImmutable());
+		return new ImmutableType(name, typeParams, annotations, subDefinitions, aliasDefinitions, unmodifiable(res));
+	}
+
+	/**
+	 * Return a model in which the type at the end of {@code path} is replaced by the result of {@code f}. Only the
+	 * types along the path are copied.
+	 * @param path The names of the nested sub-definitions leading to the type, from this type. An empty path
+	 *        designates this type.
+	 * @throws RuntimeException if a definition of the path does not exist.
+	 */
+	public ImmutableType update(List<String> path, UnaryOperator<ImmutableType> f) {
+		if (path.isEmpty()) return f.apply(this);
+		final int index = indexOfSubDefinition(path.get(0));
+		if (index < 0) throw new RuntimeException("Unknown definition: " + path.get(0) + " in type " + name);
+		final ImmutableTypeDefinition definition = subDefinitions.get(index);
+		final ImmutableType newType = definition.getType().update(path.subList(1, path.size()), f);
+		return withSubDefinition(index, definition.withType(newType));
+	}
+
+	/**
+	 * Return the result of applying {@code f} to each type of this type tree, bottom-up: {@code f} is applied to a
+	 * type once its type parameters and the types of its sub-definitions have been transformed. Types for which
+	 * {@code f} returns its argument, and whose descendants are unchanged, are not copied.
+	 * <p>
+	 * Alias values are not transformed.
+	 */
+	public ImmutableType transform(UnaryOperator<ImmutableType> f) {
+		PersistentList<ImmutableType> newTypeParams = typeParams;
+		for (int i = 0; i < typeParams.size(); i++) {
+			newTypeParams = newTypeParams.with(i, typeParams.get(i).transform(f));
+		}
+		PersistentList<ImmutableTypeDefinition> newSubDefinitions = subDefinitions;
+		for (int i = 0; i < subDefinitions.size(); i++) {
+			final ImmutableTypeDefinition definition = subDefinitions.get(i);
+			if (definition.getType() == null) continue;
+			newSubDefinitions = newSubDefinitions.with(i, definition.withType(definition.getType().transform(f)));
+		}
+		final ImmutableType res = newTypeParams == typeParams && newSubDefinitions == subDefinitions ? this
+				: new ImmutableType(name, newTypeParams, annotations, newSubDefinitions, aliasDefinitions,
+						varDefinitions);
+		return f.apply(res);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(name);
+		if (!typeParams.isEmpty()) sb.append("<")
+				.append(typeParams.stream().map(ImmutableType::toString).collect(Collectors.joining(", ")))
+				.append(">");
+		annotations.values().forEach(a -> sb.append(" ").append(a.toString()));
+		if (!subDefinitions.isEmpty()) sb.append(" { ... }");
+		return sb.toString();
+	}
+}
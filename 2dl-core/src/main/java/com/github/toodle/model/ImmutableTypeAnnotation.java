@@ -0,0 +1,57 @@
+package com.github.toodle.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable {@link TypeAnnotation}, which can be shared by several types.
+ */
+public final class ImmutableTypeAnnotation {
+	private final String name;
+	private final List<Expr> parameters;
+
+	public ImmutableTypeAnnotation(String name, List<Expr> parameters) {
+		this.name = name;
+		final List<Expr> params = new ArrayList<>(parameters.size());
+		for (final Expr param : parameters) {
+			params.add(param.toImmutable());
+		}
+		this.parameters = Collections.unmodifiableList(params);
+	}
+
+	public static ImmutableTypeAnnotation of(TypeAnnotation annotation) {
+		return new ImmutableTypeAnnotation(annotation.getName(), annotation.getExprParams());
+	}
+
+	/**
+	 * Return a new mutable annotation with the same name and parameters.
+	 */
+	public TypeAnnotation toTypeAnnotation() {
+		final TypeAnnotation res = new TypeAnnotation();
+		res.setName(name);
+		res.getExprParams_mutable().addAll(parameters);
+		return res;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Expr> getExprParams() {
+		return parameters;
+	}
+
+	public ImmutableTypeAnnotation withExprParams(List<Expr> parameters) {
+		return new ImmutableTypeAnnotation(name, parameters);
+	}
+
+	@Override
+	public String toString() {
+		if (parameters.isEmpty()) return name;
+		return name + "("
+				+ parameters.stream().map(Expr::getAsObject).map(Object::toString).collect(Collectors.joining(", "))
+				+ ")";
+	}
+}
@@ -0,0 +1,81 @@
+package com.github.toodle.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An immutable {@link TypeDefinition}. The {@code withXxx} methods return a new definition, which shares its type
+ * with this one unless it is replaced.
+ */
+public final class ImmutableTypeDefinition {
+	private final String name;
+	private final Set<String> modifiers;
+	private final ImmutableType type;
+	private final SourceLocation location;
+
+	public ImmutableTypeDefinition(String name, Collection<String> modifiers, ImmutableType type,
+			SourceLocation location) {
+		this.name = name;
+		this.modifiers = modifiers.isEmpty() ? Collections.emptySet()
+				: Collections.unmodifiableSet(new LinkedHashSet<>(modifiers));
+		this.type = type;
+		this.location = location;
+	}
+
+	// the modifiers of the copies are already unmodifiable
+	private ImmutableTypeDefinition(String name, Set<String> modifiers, ImmutableType type,
+			SourceLocation location) {
+		this.name = name;
+		this.modifiers = modifiers;
+		this.type = type;
+		this.location = location;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Set<String> getModifiers() {
+		return modifiers;
+	}
+
+	public boolean hasModifier(String modifier) {
+		return modifiers.contains(modifier);
+	}
+
+	public ImmutableType getType() {
+		return type;
+	}
+
+	public SourceLocation getLocation() {
+		return location;
+	}
+
+	public ImmutableTypeDefinition withName(String name) {
+		return new ImmutableTypeDefinition(name, modifiers, type, location);
+	}
+
+	public ImmutableTypeDefinition withModifiers(Collection<String> modifiers) {
+		return new ImmutableTypeDefinition(name, modifiers, type, location);
+	}
+
+	public ImmutableTypeDefinition withType(ImmutableType type) {
+		if (type == this.type) return this;
+		return new ImmutableTypeDefinition(name, modifiers, type, location);
+	}
+
+	public ImmutableTypeDefinition withLocation(SourceLocation location) {
+		return new ImmutableTypeDefinition(name, modifiers, type, location);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		modifiers.forEach(m -> sb.append(m).append(" "));
+		sb.append(name);
+		if (type != null) sb.append(": ").append(type.toString());
+		return sb.toString();
+	}
+}
@@ -0,0 +1,155 @@
+package com.github.toodle.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list, stored as a tree of arrays of 32 elements, so that a new version of the list with one element
+ * replaced, appended or removed from the end is created in O(log32(n)) time and shares all the other nodes with the
+ * original list.
+ * <p>
+ * Inserting an element other than at the end, or removing an element other than the last, copies the list in O(n)
+ * time.
+ */
+public final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	private static final PersistentList<?> EMPTY = new PersistentList<>(0, 0, new Object[0]);
+	private final int size;
+	// number of bits of an index used below the root node
+	private final int shift;
+	// the nodes of the last level hold the elements, the others hold child nodes; nodes are never modified
+	private final Object[] root;
+
+	private PersistentList(int size, int shift, Object[] root) {
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentList<E> empty() {
+		return (PersistentList<E>) EMPTY;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentList<E> of(Collection<? extends E> elements) {
+		if (elements instanceof PersistentList) return (PersistentList<E>) elements;
+		if (elements.isEmpty()) return empty();
+		// build the leaves, then each level of nodes, bottom-up
+		Object[] nodes = elements.toArray();
+		int shift = -BITS;
+		do {
+			final Object[] parents = new Object[(nodes.length + MASK) / WIDTH];
+			for (int i = 0; i < parents.length; i++) {
+				parents[i] = Arrays.copyOfRange(nodes, i * WIDTH, Math.min(nodes.length, (i + 1) * WIDTH));
+			}
+			nodes = parents;
+			shift += BITS;
+		} while (nodes.length > 1);
+		return new PersistentList<>(elements.size(), shift, (Object[]) nodes[0]);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		Object[] node = root;
+		for (int level = shift; level > 0; level -= BITS) {
+			node = (Object[]) node[(index >>> level) & MASK];
+		}
+		return (E) node[index & MASK];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return a list with the element at {@code index} replaced.
+	 */
+	public PersistentList<E> with(int index, E element) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		if (get(index) == element) return this;
+		return new PersistentList<>(size, shift, set(root, shift, index, element));
+	}
+
+	private static Object[] set(Object[] node, int level, int index, Object element) {
+		final Object[] res = node.clone();
+		final int i = (index >>> level) & MASK;
+		res[i] = level == 0 ? element : set((Object[]) node[i], level - BITS, index, element);
+		return res;
+	}
+
+	/**
+	 * Return a list with {@code element} appended.
+	 */
+	public PersistentList<E> plus(E element) {
+		if (size == WIDTH << shift) {
+			// the tree is full: add a level
+			final Object[] newRoot = { root };
+			return new PersistentList<>(size + 1, shift + BITS, append(newRoot, shift + BITS, size, element));
+		}
+		return new PersistentList<>(size + 1, shift, append(root, shift, size, element));
+	}
+
+	private static Object[] append(Object[] node, int level, int index, Object element) {
+		final int i = (index >>> level) & MASK;
+		final Object[] res = Arrays.copyOf(node, i + 1);
+		if (level == 0) {
+			res[i] = element;
+		} else {
+			final Object[] child = i < node.length ? (Object[]) node[i] : new Object[0];
+			res[i] = append(child, level - BITS, index, element);
+		}
+		return res;
+	}
+
+	/**
+	 * Return a list with {@code element} inserted at {@code index}. This copies the list.
+	 */
+	public PersistentList<E> plus(int index, E element) {
+		if (index == size) return plus(element);
+		final List<E> res = new ArrayList<>(this);
+		res.add(index, element);
+		return of(res);
+	}
+
+	/**
+	 * Return a list without the element at {@code index}. This copies the list, unless the element is the last one.
+	 */
+	public PersistentList<E> minus(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		if (index == size - 1) return minusLast();
+		final List<E> res = new ArrayList<>(this);
+		res.remove(index);
+		return of(res);
+	}
+
+	private PersistentList<E> minusLast() {
+		if (size == 1) return empty();
+		final Object[] newRoot = removeLast(root, shift, size - 1);
+		// the root has a single child left: remove a level
+		if (shift > 0 && newRoot.length == 1) {
+			return new PersistentList<>(size - 1, shift - BITS, (Object[]) newRoot[0]);
+		}
+		return new PersistentList<>(size - 1, shift, newRoot);
+	}
+
+	private static Object[] removeLast(Object[] node, int level, int index) {
+		final int i = (index >>> level) & MASK;
+		if (level == 0) return Arrays.copyOf(node, i);
+		final Object[] child = removeLast((Object[]) node[i], level - BITS, index);
+		// drop the child if it is now empty
+		if (child.length == 0) return Arrays.copyOf(node, i);
+		final Object[] res = Arrays.copyOf(node, i + 1);
+		res[i] = child;
+		return res;
+	}
+}
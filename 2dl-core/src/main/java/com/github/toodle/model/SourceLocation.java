@@ -1,5 +1,7 @@
 package com.github.toodle.model;
 
+import java.util.Objects;
+
 public class SourceLocation {
 	private final String fileName;
 	private final int line;
@@ -9,12 +11,29 @@ public class SourceLocation {
 		this.line = line;
 	}
 
+	public String getFileName() {
+		return fileName;
+	}
+
 	public int getLine() {
 		return line;
 	}
 
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof SourceLocation)) return false;
+		final SourceLocation other = (SourceLocation) o;
+		return Objects.equals(fileName, other.fileName) && getLine() == other.getLine();
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Objects.hashCode(fileName) + getLine();
+	}
+
 	@Override
 	public String toString() {
-		return fileName + ":" + line;
+		return fileName + ":" + getLine();
 	}
 }
@@ -0,0 +1,86 @@
+package com.github.toodle.model;
+
+/**
+ * Canonical instances of identifiers (type names, annotation names, modifiers...), so that the many copies of the
+ * same name in a model share a single string, and that comparisons of equal names succeed on identity.
+ * <p>
+ * Canonical instances are those of {@link String#intern()}, so that models read by different readers share them,
+ * and that unused symbols can be garbage collected.
+ */
+public class Symbols {
+	private Symbols() {
+	}
+
+	/**
+	 * Return the canonical instance of {@code symbol}, or {@code null} if {@code symbol} is {@code null}.
+	 */
+	public static String intern(String symbol) {
+		return symbol == null ? null : symbol.intern();
+	}
+
+	/**
+	 * A small direct-mapped cache in front of {@link Symbols#intern(String)}, used while reading a model: most
+	 * identifiers are found in the cache, without calling {@link String#intern()} nor, for identifiers read from
+	 * characters, creating a new string.
+	 * <p>
+	 * Instances may be shared by several threads: slots are overwritten without synchronization, but only ever hold
+	 * canonical instances.
+	 */
+	public static class Cache {
+		public static final int DEFAULT_SIZE = 1024;
+		private final String[] slots;
+		private final int mask;
+
+		/**
+		 * @param size The number of slots, a power of 2.
+		 */
+		public Cache(int size) {
+			if (Integer.bitCount(size) != 1) throw new IllegalArgumentException("size must be a power of 2: " + size);
+			this.slots = new String[size];
+			this.mask = size - 1;
+		}
+
+		public Cache() {
+			this(DEFAULT_SIZE);
+		}
+
+		public String intern(String symbol) {
+			if (symbol == null) return null;
+			final int slot = spread(symbol.hashCode()) & mask;
+			final String cached = slots[slot];
+			if (symbol.equals(cached)) return cached;
+			final String res = symbol.intern();
+			slots[slot] = res;
+			return res;
+		}
+
+		/**
+		 * Return the canonical instance of the string made of the characters of {@code chars} from {@code start}
+		 * (inclusive) to {@code end} (exclusive).
+		 */
+		public String intern(char[] chars, int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + chars[i];
+			}
+			final int slot = spread(hash) & mask;
+			final String cached = slots[slot];
+			if (cached != null && regionEquals(cached, chars, start, end)) return cached;
+			final String res = new String(chars, start, end - start).intern();
+			slots[slot] = res;
+			return res;
+		}
+
+		private static int spread(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean regionEquals(String s, char[] chars, int start, int end) {
+			if (s.length() != end - start) return false;
+			for (int i = start; i < end; i++) {
+				if (s.charAt(i - start) != chars[i]) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -1,14 +1,18 @@
 package com.github.toodle.model;
 
 import java.math.BigDecimal;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.function.Function;
+import java.util.RandomAccess;
 import java.util.stream.Collectors;
 
 import com.github.toodle.services.ToodleVisitor;
@@ -21,14 +25,25 @@ import com.github.visitorj.VisitableList;
 public class Type implements Visitable<ToodleVisitor> {
 	private static final String IDENTIFIER_TYPE_PARAM = "TYPE_PARAM";
 	private static final String IDENTIFIER_SUB_DEFINITION = "SUB_DEFINITION";
+	private static final TypeDefinition[] NO_DEFINITIONS = {};
 	private String name;
-	private final Map<String, TypeAnnotation> annotations = new HashMap<>();
-	private final List<TypeDefinition> subDefinitions = new ArrayList<>();
-	private final Map<String, AliasDefinition> aliasDefinitions = new HashMap<>();
-	private final Map<String, VarDefinition> varDefinitions = new HashMap<>();
-	private final List<Type> typeParams = new ArrayList<>();
+	// collections are sized for leaf types: empty collections do not allocate storage, and alias and var maps are
+	// only allocated when a definition is added
+	private final ArrayMap<String, TypeAnnotation> annotations = new ArrayMap<>();
+	private final SubDefinitionList subDefinitions = new SubDefinitionList();
+	// sub-definitions by name, and by type name then name, built on first lookup; null when not built. The indexes
+	// are published once complete, so that concurrent lookups, e.g under a shared read lock, never see a partial index
+	private volatile Map<String, TypeDefinition> subDefinitionsByName;
+	private volatile Map<String, DefinitionsOfType> subDefinitionsByTypeName;
+	private Map<String, AliasDefinition> aliasDefinitions;
+	private Map<String, VarDefinition> varDefinitions;
+	private List<Type> typeParams = new ArrayList<>(0);
 	// the container type (in case of a type parameter or a subdefinition)
-	private final Type parent;
+	private Type parent;
+	private boolean frozen;
+	// the hash code and content hash of a frozen type, computed on first use; 0 if not computed
+	private int hash;
+	private volatile long contentHash;
 
 	public Type(String name, Type parent) {
 		this.name = name;
@@ -55,7 +70,9 @@ public class Type implements Visitable<ToodleVisitor> {
 	}
 
 	public void setName(String name) {
+		checkNotFrozen();
 		this.name = name;
+		if (parent != null) parent.subDefinitionChanged();
 	}
 
 	public Map<String, TypeAnnotation> getAnnotations() {
@@ -66,24 +83,212 @@ public class Type implements Visitable<ToodleVisitor> {
 		return annotations.get(annotationName);
 	}
 
-	public Collection<TypeDefinition> getSubDefinitions() {
+	public List<TypeDefinition> getSubDefinitions() {
 		return subDefinitions;
 	}
 
+	/**
+	 * Return the sub-definitions whose type has the specified name, by name, as an unmodifiable map. If several
+	 * sub-definitions have the same name, the first one is returned.
+	 */
 	public Map<String, TypeDefinition> getSubDefinitionsOfType(String typeName) {
-		return subDefinitions.stream().filter(
-				d -> Objects.equals(Optional.ofNullable(d.getType()).map(Type::getName).orElse(null), typeName))
-				.collect(Collectors.toMap(TypeDefinition::getName, Function.identity()));
+		Map<String, DefinitionsOfType> index = subDefinitionsByTypeName;
+		if (index == null) {
+			index = new HashMap<>();
+			for (final TypeDefinition definition : subDefinitions) {
+				indexByTypeName(index, definition);
+			}
+			subDefinitionsByTypeName = index;
+		}
+		final DefinitionsOfType res = index.get(typeName);
+		return res == null ? Collections.emptyMap() : res.view;
 	}
 
+	/**
+	 * Return the first sub-definition with the specified name, or {@code null}.
+	 */
 	public TypeDefinition getSubDefinition(String name) {
-		return subDefinitions.stream().filter(d -> Objects.equals(d.getName(), name)).findAny().orElse(null);
+		Map<String, TypeDefinition> index = subDefinitionsByName;
+		if (index == null) {
+			index = new HashMap<>();
+			for (final TypeDefinition definition : subDefinitions) {
+				indexByName(index, definition);
+			}
+			subDefinitionsByName = index;
+		}
+		return index.get(name);
+	}
+
+	private static void indexByName(Map<String, TypeDefinition> index, TypeDefinition definition) {
+		index.putIfAbsent(definition.getName(), definition);
+	}
+
+	private static void indexByTypeName(Map<String, DefinitionsOfType> index, TypeDefinition definition) {
+		index.computeIfAbsent(getTypeName(definition), n -> new DefinitionsOfType()).definitions
+				.putIfAbsent(definition.getName(), definition);
+	}
+
+	private static String getTypeName(TypeDefinition definition) {
+		return definition.getType() == null ? null : definition.getType().getName();
+	}
+
+	/**
+	 * Drop the indexes of sub-definitions, after a sub-definition, or the type of a sub-definition, was renamed or
+	 * replaced. The indexes of a frozen type are kept, since its sub-definitions cannot change.
+	 */
+	void subDefinitionChanged() {
+		if (frozen) return;
+		subDefinitionsByName = null;
+		subDefinitionsByTypeName = null;
+	}
+
+	/**
+	 * The sub-definitions of a type with a given type name.
+	 */
+	private static class DefinitionsOfType {
+		private final Map<String, TypeDefinition> definitions = new LinkedHashMap<>();
+		private final Map<String, TypeDefinition> view = Collections.unmodifiableMap(definitions);
+	}
+
+	/**
+	 * The list of sub-definitions, which keeps the indexes up to date: appended definitions are added to the
+	 * indexes, definitions replaced by a definition with the same name and type name are replaced in the indexes,
+	 * and other modifications drop them.
+	 */
+	private class SubDefinitionList extends AbstractList<TypeDefinition> implements RandomAccess {
+		private TypeDefinition[] definitions = NO_DEFINITIONS;
+		private int size;
+
+		@Override
+		public TypeDefinition get(int index) {
+			checkIndex(index, size);
+			return definitions[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void add(int index, TypeDefinition definition) {
+			checkNotFrozen();
+			checkIndex(index, size + 1);
+			if (size == definitions.length) definitions = Arrays.copyOf(definitions, Math.max(4, size + (size >> 1)));
+			System.arraycopy(definitions, index, definitions, index + 1, size - index);
+			definitions[index] = definition;
+			size++;
+			modCount++;
+			if (index < size - 1) {
+				subDefinitionChanged();
+				return;
+			}
+			final Map<String, TypeDefinition> byName = subDefinitionsByName;
+			if (byName != null) indexByName(byName, definition);
+			final Map<String, DefinitionsOfType> byTypeName = subDefinitionsByTypeName;
+			if (byTypeName != null) indexByTypeName(byTypeName, definition);
+		}
+
+		@Override
+		public TypeDefinition set(int index, TypeDefinition definition) {
+			checkNotFrozen();
+			checkIndex(index, size);
+			final TypeDefinition res = definitions[index];
+			definitions[index] = definition;
+			final String name = definition.getName();
+			final String typeName = getTypeName(definition);
+			if (!Objects.equals(res.getName(), name) || !Objects.equals(getTypeName(res), typeName)) {
+				subDefinitionChanged();
+				return res;
+			}
+			// the replaced definition is indexed only if it is the first with its name
+			final Map<String, TypeDefinition> byName = subDefinitionsByName;
+			if (byName != null && byName.get(name) == res) byName.put(name, definition);
+			final Map<String, DefinitionsOfType> byTypeName = subDefinitionsByTypeName;
+			final DefinitionsOfType ofType = byTypeName == null ? null : byTypeName.get(typeName);
+			if (ofType != null && ofType.definitions.get(name) == res) ofType.definitions.put(name, definition);
+			return res;
+		}
+
+		@Override
+		public TypeDefinition remove(int index) {
+			final TypeDefinition res = get(index);
+			removeRange(index, index + 1);
+			return res;
+		}
+
+		@Override
+		protected void removeRange(int fromIndex, int toIndex) {
+			checkNotFrozen();
+			System.arraycopy(definitions, toIndex, definitions, fromIndex, size - toIndex);
+			Arrays.fill(definitions, size - (toIndex - fromIndex), size, null);
+			size -= toIndex - fromIndex;
+			modCount++;
+			subDefinitionChanged();
+		}
+
+		private void checkIndex(int index, int bound) {
+			if (index < 0 || index >= bound) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+		}
 	}
 
 	public Type getParent() {
 		return parent;
 	}
 
+	/**
+	 * Move this type to another container type, e.g when merging the definitions of several files.
+	 */
+	public void setParent(Type parent) {
+		checkNotFrozen();
+		this.parent = parent;
+	}
+
+	/**
+	 * Make this type and its descendants, including the values of aliases, deeply unmodifiable, and build the
+	 * indexes of sub-definitions, so that the model can be read by several threads without synchronization.
+	 * Modifications of a frozen type, definition or annotation throw {@link UnsupportedOperationException}.
+	 * <p>
+	 * Other threads must obtain the model after this method returns, e.g through a final, volatile or synchronized
+	 * field, or a task submitted to an executor.
+	 * @return this type.
+	 */
+	public Type freeze() {
+		if (frozen) return this;
+		frozen = true;
+		annotations.freeze();
+		annotations.values().forEach(TypeAnnotation::freeze);
+		typeParams = typeParams.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(typeParams);
+		typeParams.forEach(Type::freeze);
+		subDefinitions.forEach(TypeDefinition::freeze);
+		if (aliasDefinitions != null) {
+			aliasDefinitions.values().forEach(a -> a.getValue().freeze());
+		}
+		if (varDefinitions != null) {
+			varDefinitions.replaceAll((varName, var) -> new VarDefinition(varName, var.getValue().toImmutable(),
+					var.getLocation()));
+		}
+		// the indexes are built now, so that reads of a frozen model never write
+		if (subDefinitions.isEmpty()) {
+			subDefinitionsByName = Collections.emptyMap();
+			subDefinitionsByTypeName = Collections.emptyMap();
+		} else {
+			getSubDefinition(null);
+			getSubDefinitionsOfType(null);
+		}
+		return this;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new UnsupportedOperationException("The type is frozen: " + name);
+	}
+
 	@Override
 	public void event(VisitEvent event, ToodleVisitor visitor) {
 		visitor.event(event, this);
@@ -107,6 +312,111 @@ public class Type implements Visitable<ToodleVisitor> {
 		return typeParams;
 	}
 
+	/**
+	 * Return whether {@code o} is a type with the same name, type parameters, annotations in the same order,
+	 * sub-definitions, aliases and vars, compared structurally. Parents and the locations of definitions are not
+	 * compared.
+	 * <p>
+	 * The hash code of a type changes when the type or its descendants are modified, unless it is frozen.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Type)) return false;
+		final Type other = (Type) o;
+		// cheap for frozen types, whose hash codes are cached
+		if (frozen && other.frozen && hashCode() != other.hashCode()) return false;
+		return Objects.equals(name, other.name) && typeParams.equals(other.typeParams) && hasSameAnnotations(other)
+				&& subDefinitions.equals(other.subDefinitions)
+				&& getAliasDefinitionMap().equals(other.getAliasDefinitionMap())
+				&& getVarDefinitionMap().equals(other.getVarDefinitionMap());
+	}
+
+	private boolean hasSameAnnotations(Type other) {
+		if (annotations.size() != other.annotations.size()) return false;
+		final Iterator<TypeAnnotation> otherAnnotations = other.annotations.values().iterator();
+		for (final TypeAnnotation annotation : annotations.values()) {
+			if (!annotation.equals(otherAnnotations.next())) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int res = hash;
+		if (res != 0) return res;
+		res = Objects.hashCode(name);
+		res = 31 * res + typeParams.hashCode();
+		for (final TypeAnnotation annotation : annotations.values()) {
+			res = 31 * res + annotation.hashCode();
+		}
+		res = 31 * res + subDefinitions.hashCode();
+		res = 31 * res + getAliasDefinitionMap().hashCode();
+		res = 31 * res + getVarDefinitionMap().hashCode();
+		if (frozen) hash = res;
+		return res;
+	}
+
+	/**
+	 * Return a 64-bit hash of the content of this type and its descendants, consistent with {@link #equals(Object)},
+	 * computed bottom-up from the content hashes of its children. Unlike {@link #hashCode()}, it only depends on the
+	 * content of the model, so that it can be persisted, e.g to detect changes between two versions of a schema.
+	 * <p>
+	 * The hash is cached if the type is frozen, so that equal subtrees of frozen models are compared in constant time.
+	 */
+	public long getContentHash() {
+		return getContentHash(null);
+	}
+
+	/**
+	 * Return the content hash of this type, memoizing the hashes of unfrozen types with children, including this one,
+	 * in {@code hashes}, so that the hashes of all types of a model are computed once. The map should be an
+	 * {@link java.util.IdentityHashMap}, used while the model is not modified.
+	 * @param hashes The hashes of unfrozen types by type, or {@code null}.
+	 */
+	public long getContentHash(Map<Type, Long> hashes) {
+		long res = contentHash;
+		if (res != 0) return res;
+		// the hashes of leaf types are cheap to compute, and are not memoized
+		final boolean memoize = hashes != null && (!typeParams.isEmpty() || !subDefinitions.isEmpty()
+				|| aliasDefinitions != null && !aliasDefinitions.isEmpty());
+		if (memoize) {
+			final Long hash = hashes.get(this);
+			if (hash != null) return hash;
+		}
+		res = ContentHash.add(ContentHash.SEED, name);
+		res = ContentHash.add(res, typeParams.size());
+		for (final Type typeParam : typeParams) {
+			res = ContentHash.add(res, typeParam.getContentHash(hashes));
+		}
+		res = ContentHash.add(res, annotations.size());
+		for (final TypeAnnotation annotation : annotations.values()) {
+			res = ContentHash.add(res, annotation.contentHash());
+		}
+		res = ContentHash.add(res, subDefinitions.size());
+		for (final TypeDefinition definition : subDefinitions) {
+			res = ContentHash.add(res, definition.getContentHash(hashes));
+		}
+		// aliases and vars are not ordered
+		long aliasesHash = 0;
+		for (final AliasDefinition alias : getAliasDefinitions()) {
+			aliasesHash += ContentHash.add(ContentHash.add(ContentHash.SEED, alias.getName()),
+					alias.getValue().getContentHash(hashes));
+		}
+		long varsHash = 0;
+		for (final VarDefinition var : getVarDefinitions()) {
+			varsHash += ContentHash.add(ContentHash.add(ContentHash.SEED, var.getName()),
+					var.getValue().contentHash());
+		}
+		res = ContentHash.add(ContentHash.add(res, aliasesHash), varsHash);
+		if (frozen) {
+			contentHash = res;
+		} else if (memoize) {
+			hashes.put(this, res);
+		}
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder(name);
@@ -118,30 +428,59 @@ public class Type implements Visitable<ToodleVisitor> {
 	}
 
 	public void addAliasDefinition(String name, Type value) {
-		aliasDefinitions.put(name, new AliasDefinition(name, value));
+		addAliasDefinition(name, value, null);
+	}
+
+	/**
+	 * @param location The location of the definition, or {@code null} if unknown.
+	 */
+	public void addAliasDefinition(String name, Type value, SourceLocation location) {
+		checkNotFrozen();
+		if (aliasDefinitions == null) aliasDefinitions = new HashMap<>();
+		aliasDefinitions.put(name, new AliasDefinition(name, value, location));
+	}
+
+	public void removeAliasDefinitions() {
+		checkNotFrozen();
+		aliasDefinitions = null;
 	}
 
 	public Collection<AliasDefinition> getAliasDefinitions() {
-		return aliasDefinitions.values();
+		return getAliasDefinitionMap().values();
 	}
 
+	/**
+	 * Return an unmodifiable view of the alias definitions by name.
+	 */
 	public Map<String, AliasDefinition> getAliasDefinitionMap() {
-		return aliasDefinitions;
+		return aliasDefinitions == null ? Collections.emptyMap() : Collections.unmodifiableMap(aliasDefinitions);
 	}
 
 	public void addVarDefinition(String varName, Expr value) {
-		varDefinitions.put(varName, new VarDefinition(varName, value));
+		addVarDefinition(varName, value, null);
+	}
+
+	/**
+	 * @param location The location of the definition, or {@code null} if unknown.
+	 */
+	public void addVarDefinition(String varName, Expr value, SourceLocation location) {
+		checkNotFrozen();
+		if (varDefinitions == null) varDefinitions = new HashMap<>();
+		varDefinitions.put(varName, new VarDefinition(varName, value, location));
 	}
 
+	/**
+	 * Return an unmodifiable view of the var definitions by name.
+	 */
 	public Map<String, VarDefinition> getVarDefinitionMap() {
-		return varDefinitions;
+		return varDefinitions == null ? Collections.emptyMap() : Collections.unmodifiableMap(varDefinitions);
 	}
 
 	public Collection<VarDefinition> getVarDefinitions() {
-		return varDefinitions.values();
+		return getVarDefinitionMap().values();
 	}
 
 	public Object getVarValue(String varName) {
-		return varDefinitions.get(varName);
+		return getVarDefinitionMap().get(varName);
 	}
 }
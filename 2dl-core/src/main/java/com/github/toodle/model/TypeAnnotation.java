@@ -1,9 +1,13 @@
 package com.github.toodle.model;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.github.toodle.services.ToodleVisitor;
@@ -12,19 +16,50 @@ import com.github.visitorj.VisitResult;
 import com.github.visitorj.Visitable;
 
 public class TypeAnnotation implements Visitable<ToodleVisitor> {
+	private static final Expr[] NO_PARAMS = {};
+	// kinds of typed views of the parameters
+	private static final int VIEW_OBJECT = 0;
+	private static final int VIEW_STRING = 1;
+	private static final int VIEW_INT = 2;
+	private static final int VIEW_LONG = 3;
+	private static final int VIEW_BIG_DECIMAL = 4;
+	private static final int VIEW_BOOLEAN = 5;
+	private static final int VIEW_COUNT = 6;
 	private String name;
-	private final List<Expr> parameters = new ArrayList<>();
+	private final List<Expr> parameters = new ParamList();
+	// typed views by kind, computed on first use and dropped when the parameters are modified; null until a view
+	// is computed. The views are immutable, so that they can be published without synchronization. The views of a
+	// frozen annotation are not cached, so that reads of a frozen model never write
+	private List<?>[] views;
+	private boolean frozen;
 
 	public String getName() {
 		return name;
 	}
 
 	public void setName(String name) {
+		checkNotFrozen();
 		this.name = name;
 	}
 
+	/**
+	 * Make this annotation and its parameters, including lists, unmodifiable.
+	 * @see Type#freeze()
+	 */
+	public void freeze() {
+		if (frozen) return;
+		for (int i = 0; i < parameters.size(); i++) {
+			parameters.set(i, parameters.get(i).toImmutable());
+		}
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new UnsupportedOperationException("The annotation is frozen: " + name);
+	}
+
 	public List<Object> getObjectParams() {
-		return parameters.stream().map(Expr::getAsObject).collect(Collectors.toList());
+		return getView(VIEW_OBJECT, Expr::getAsObject);
 	}
 
 	public List<Expr> getExprParams() {
@@ -36,23 +71,141 @@ public class TypeAnnotation implements Visitable<ToodleVisitor> {
 	}
 
 	public List<String> getStringParams() {
-		return parameters.stream().map(Expr::getAsString).collect(Collectors.toList());
+		return getView(VIEW_STRING, Expr::getAsString);
 	}
 
 	public List<Integer> getIntParams() {
-		return parameters.stream().map(Expr::getAsInt).collect(Collectors.toList());
+		return getView(VIEW_INT, Expr::getAsInt);
 	}
 
 	public List<Long> getLongParams() {
-		return parameters.stream().map(Expr::getAsLong).collect(Collectors.toList());
+		return getView(VIEW_LONG, Expr::getAsLong);
 	}
 
 	public List<BigDecimal> getBigDecimalParams() {
-		return parameters.stream().map(Expr::getAsBigDecimal).collect(Collectors.toList());
+		return getView(VIEW_BIG_DECIMAL, Expr::getAsBigDecimal);
 	}
 
 	public List<Boolean> getBooleanParams() {
-		return parameters.stream().map(Expr::getAsBoolean).collect(Collectors.toList());
+		return getView(VIEW_BOOLEAN, Expr::getAsBoolean);
+	}
+
+	/**
+	 * Return an unmodifiable list of the parameters converted by {@code converter}, computed on the first call, or on
+	 * each call once the annotation is frozen. The single-value accessors, such as {@link #getInt(int)}, do not
+	 * allocate a list.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> getView(int kind, Function<Expr, T> converter) {
+		List<?>[] views = this.views;
+		if (views != null && views[kind] != null) return (List<T>) views[kind];
+		final Object[] values = new Object[parameters.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = converter.apply(parameters.get(i));
+		}
+		final List<T> res = (List<T>) Collections.unmodifiableList(Arrays.asList(values));
+		if (frozen) return res;
+		if (views == null) {
+			views = new List<?>[VIEW_COUNT];
+			this.views = views;
+		}
+		views[kind] = res;
+		return res;
+	}
+
+	public int getParamCount() {
+		return parameters.size();
+	}
+
+	public Expr getExpr(int index) {
+		return parameters.get(index);
+	}
+
+	public Object getObject(int index) {
+		return parameters.get(index).getAsObject();
+	}
+
+	public String getString(int index) {
+		return parameters.get(index).getAsString();
+	}
+
+	public int getInt(int index) {
+		return parameters.get(index).getAsInt();
+	}
+
+	public long getLong(int index) {
+		return parameters.get(index).getAsLong();
+	}
+
+	public BigDecimal getBigDecimal(int index) {
+		return parameters.get(index).getAsBigDecimal();
+	}
+
+	public boolean getBoolean(int index) {
+		return parameters.get(index).getAsBoolean();
+	}
+
+	/**
+	 * The list of parameters, which drops the typed views when it is modified.
+	 */
+	private class ParamList extends AbstractList<Expr> implements RandomAccess {
+		private Expr[] params = NO_PARAMS;
+		private int size;
+
+		@Override
+		public Expr get(int index) {
+			checkIndex(index, size);
+			return params[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Expr set(int index, Expr param) {
+			checkNotFrozen();
+			checkIndex(index, size);
+			final Expr res = params[index];
+			params[index] = param;
+			paramsChanged();
+			return res;
+		}
+
+		@Override
+		public void add(int index, Expr param) {
+			checkNotFrozen();
+			checkIndex(index, size + 1);
+			if (size == params.length) params = Arrays.copyOf(params, Math.max(1, size * 2));
+			System.arraycopy(params, index, params, index + 1, size - index);
+			params[index] = param;
+			size++;
+			modCount++;
+			paramsChanged();
+		}
+
+		@Override
+		public Expr remove(int index) {
+			checkNotFrozen();
+			checkIndex(index, size);
+			final Expr res = params[index];
+			System.arraycopy(params, index + 1, params, index, size - index - 1);
+			params[--size] = null;
+			modCount++;
+			paramsChanged();
+			return res;
+		}
+
+		private void paramsChanged() {
+			views = null;
+		}
+
+		private void checkIndex(int index, int bound) {
+			if (index < 0 || index >= bound) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+		}
 	}
 
 	@Override
@@ -65,6 +218,33 @@ public class TypeAnnotation implements Visitable<ToodleVisitor> {
 		return visitor.visit(this, identifier);
 	}
 
+	/**
+	 * Return whether {@code o} is an annotation with the same name and parameters.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof TypeAnnotation)) return false;
+		final TypeAnnotation other = (TypeAnnotation) o;
+		return Objects.equals(name, other.name) && parameters.equals(other.parameters);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Objects.hashCode(name) + parameters.hashCode();
+	}
+
+	/**
+	 * Return a content hash consistent with {@link #equals(Object)}.
+	 */
+	long contentHash() {
+		long res = ContentHash.add(ContentHash.SEED, name);
+		for (final Expr param : parameters) {
+			res = ContentHash.add(res, param.contentHash());
+		}
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder(name);
@@ -0,0 +1,347 @@
+package com.github.toodle.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable model stored as columns of integers, with one row per type, instead of one object per type,
+ * definition and annotation. The footprint of a model is a few tens of bytes per definition, and the garbage
+ * collector only sees a few dozen objects whatever the size of the model.
+ * <p>
+ * Each row, or node, is a type: the root type, a type parameter, the type of a sub-definition, which also holds the
+ * name, modifiers and location of the definition, or the value of an alias, which also holds the name of the alias.
+ * Nodes are stored in depth-first order, and linked to their parent, first child and next sibling. The children of a
+ * node are its type parameters, then its sub-definitions, then its aliases. Annotations, parameters, modifiers and
+ * vars are stored in separate tables, and each node holds the start of its range in each table.
+ * <p>
+ * The columns can be kept off-heap, in a direct buffer. Names are stored as indexes in a table of symbols, and
+ * parameters and var values as indexes in a table of distinct expressions; both tables stay on the heap.
+ * <p>
+ * Arenas are read through a {@link TypeCursor}. Instances are thread-safe.
+ */
+public final class TypeArena {
+	public static final int NONE = -1;
+	public static final int KIND_ROOT = 0;
+	public static final int KIND_TYPE_PARAM = 1;
+	public static final int KIND_DEFINITION = 2;
+	public static final int KIND_ALIAS = 3;
+
+	// columns of the node table
+	static final int KIND = 0;
+	static final int PARENT = 1;
+	static final int FIRST_CHILD = 2;
+	static final int NEXT_SIBLING = 3;
+	static final int TYPE_NAME = 4;
+	// name of the definition or alias
+	static final int NAME = 5;
+	static final int FILE_NAME = 6;
+	static final int LINE = 7;
+	// start of the range of the node in the other tables; the range ends at the start of the next node
+	static final int ANNOTATIONS = 8;
+	static final int MODIFIERS = 9;
+	static final int VARS = 10;
+	// columns of the annotation table
+	static final int ANNOTATION_NAME = 11;
+	static final int ANNOTATION_PARAMS = 12;
+	// column of the parameter table
+	static final int PARAM = 13;
+	// column of the modifier table
+	static final int MODIFIER = 14;
+	// columns of the var table
+	static final int VAR_NAME = 15;
+	static final int VAR_VALUE = 16;
+	private static final int COLUMN_COUNT = 17;
+
+	private final IntBuffer[] columns;
+	private final int nodeCount;
+	private final String[] symbols;
+	private final Expr[] exprs;
+	private final boolean offHeap;
+
+	private TypeArena(IntBuffer[] columns, int nodeCount, String[] symbols, Expr[] exprs, boolean offHeap) {
+		this.columns = columns;
+		this.nodeCount = nodeCount;
+		this.symbols = symbols;
+		this.exprs = exprs;
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * Create an arena from a model, which is not modified.
+	 * @param offHeap If {@code true}, the columns are stored in a direct buffer.
+	 */
+	public static TypeArena of(Type rootType, boolean offHeap) {
+		final Builder builder = new Builder();
+		builder.addType(rootType, KIND_ROOT, NONE, NONE, null, Collections.emptyList(), null);
+		return builder.build(offHeap);
+	}
+
+	public static TypeArena of(Type rootType) {
+		return of(rootType, false);
+	}
+
+	/**
+	 * Create an arena from a sequence of top-level definitions, e.g read by a {@code ToodleStreamReader}, without
+	 * keeping them: only the definition being added is on the heap as objects. The root type has no alias or var.
+	 */
+	public static TypeArena of(String rootTypeName, Iterator<TypeDefinition> definitions, boolean offHeap) {
+		final Builder builder = new Builder();
+		final Type rootType = new Type(rootTypeName, null);
+		builder.addType(rootType, KIND_ROOT, NONE, NONE, null, Collections.emptyList(), null);
+		int previous = NONE;
+		while (definitions.hasNext()) {
+			previous = builder.addDefinition(definitions.next(), 0, previous);
+		}
+		return builder.build(offHeap);
+	}
+
+	/**
+	 * Return a cursor on the root type.
+	 */
+	public TypeCursor cursor() {
+		return new TypeCursor(this, 0);
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Return the number of bytes used by the columns, on or off the heap.
+	 */
+	public long getColumnsByteSize() {
+		long res = 0;
+		for (final IntBuffer column : columns) {
+			res += (long) column.capacity() * Integer.BYTES;
+		}
+		return res;
+	}
+
+	/**
+	 * Return a new mutable model with the same content.
+	 */
+	public Type toType() {
+		return toType(0, null);
+	}
+
+	int get(int column, int row) {
+		return columns[column].get(row);
+	}
+
+	String getSymbol(int index) {
+		return index == NONE ? null : symbols[index];
+	}
+
+	Expr getExpr(int index) {
+		return exprs[index];
+	}
+
+	/**
+	 * Return a new mutable type with the content of a node and its descendants.
+	 */
+	Type toType(int node, Type parent) {
+		final Type res = new Type(getSymbol(get(TYPE_NAME, node)), parent);
+		for (int a = get(ANNOTATIONS, node); a < get(ANNOTATIONS, node + 1); a++) {
+			final TypeAnnotation annotation = new TypeAnnotation();
+			annotation.setName(getSymbol(get(ANNOTATION_NAME, a)));
+			for (int p = get(ANNOTATION_PARAMS, a); p < get(ANNOTATION_PARAMS, a + 1); p++) {
+				annotation.getExprParams_mutable().add(getExpr(get(PARAM, p)));
+			}
+			res.getAnnotations().put(annotation.getName(), annotation);
+		}
+		for (int v = get(VARS, node); v < get(VARS, node + 1); v++) {
+			res.addVarDefinition(getSymbol(get(VAR_NAME, v)), getExpr(get(VAR_VALUE, v)));
+		}
+		for (int child = get(FIRST_CHILD, node); child != NONE; child = get(NEXT_SIBLING, child)) {
+			switch (get(KIND, child)) {
+			case KIND_TYPE_PARAM:
+				res.getTypeParams().add(toType(child, res));
+				break;
+			case KIND_DEFINITION:
+				res.getSubDefinitions().add(toTypeDefinition(child, res));
+				break;
+			default:
+				res.addAliasDefinition(getSymbol(get(NAME, child)), toType(child, res));
+				break;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Return a new mutable definition with the content of a definition node and its descendants.
+	 */
+	TypeDefinition toTypeDefinition(int node, Type parent) {
+		final List<String> modifiers = new ArrayList<>(get(MODIFIERS, node + 1) - get(MODIFIERS, node));
+		for (int m = get(MODIFIERS, node); m < get(MODIFIERS, node + 1); m++) {
+			modifiers.add(getSymbol(get(MODIFIER, m)));
+		}
+		final TypeDefinition res = new TypeDefinition(getSymbol(get(NAME, node)), modifiers, toType(node, parent));
+		final int fileName = get(FILE_NAME, node);
+		if (fileName != NONE) res.setLocation(new SourceLocation(getSymbol(fileName), get(LINE, node)));
+		return res;
+	}
+
+	/**
+	 * A growable column of integers.
+	 */
+	private static class IntColumn {
+		private int[] values = new int[16];
+		private int size;
+
+		public void add(int value) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		public void set(int index, int value) {
+			values[index] = value;
+		}
+
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Appends nodes in depth-first order.
+	 */
+	private static class Builder {
+		private final IntColumn[] columns = new IntColumn[COLUMN_COUNT];
+		private final Map<String, Integer> symbolIndexes = new HashMap<>();
+		private final List<String> symbols = new ArrayList<>();
+		// expressions are shared by the annotations copied by the expansion of aliases
+		private final Map<Expr, Integer> exprIndexes = new IdentityHashMap<>();
+		// scalar expressions are also shared by literal; lists are not, since their literals are ambiguous
+		private final Map<String, Integer> literalIndexes = new HashMap<>();
+		private final List<Expr> exprs = new ArrayList<>();
+		private int nodeCount;
+
+		public Builder() {
+			for (int i = 0; i < COLUMN_COUNT; i++) {
+				columns[i] = new IntColumn();
+			}
+		}
+
+		private int symbol(String s) {
+			if (s == null) return NONE;
+			return symbolIndexes.computeIfAbsent(s, k -> {
+				symbols.add(k);
+				return symbols.size() - 1;
+			});
+		}
+
+		private int expr(Expr expr) {
+			return exprIndexes.computeIfAbsent(expr,
+					k -> k.isList() ? addExpr(k) : literalIndexes.computeIfAbsent(k.toLiteral(), l -> addExpr(k)));
+		}
+
+		private int addExpr(Expr expr) {
+			exprs.add(expr.toImmutable());
+			return exprs.size() - 1;
+		}
+
+		/**
+		 * Add a node and its descendants, and link it after {@code previous}, or as the first child of
+		 * {@code parent} if {@code previous} is {@link TypeArena#NONE}.
+		 * @return The index of the node.
+		 */
+		public int addType(Type type, int kind, int parent, int previous, String name, Collection<String> modifiers,
+				SourceLocation location) {
+			final int node = nodeCount++;
+			columns[KIND].add(kind);
+			columns[PARENT].add(parent);
+			columns[FIRST_CHILD].add(NONE);
+			columns[NEXT_SIBLING].add(NONE);
+			columns[TYPE_NAME].add(symbol(type.getName()));
+			columns[NAME].add(symbol(name));
+			columns[FILE_NAME].add(location == null ? NONE : symbol(location.getFileName()));
+			columns[LINE].add(location == null ? 0 : location.getLine());
+			if (previous != NONE) {
+				columns[NEXT_SIBLING].set(previous, node);
+			} else if (parent != NONE) {
+				columns[FIRST_CHILD].set(parent, node);
+			}
+
+			columns[ANNOTATIONS].add(columns[ANNOTATION_NAME].size());
+			for (final TypeAnnotation annotation : type.getAnnotations().values()) {
+				columns[ANNOTATION_NAME].add(symbol(annotation.getName()));
+				columns[ANNOTATION_PARAMS].add(columns[PARAM].size());
+				for (int i = 0; i < annotation.getParamCount(); i++) {
+					columns[PARAM].add(expr(annotation.getExpr(i)));
+				}
+			}
+			columns[MODIFIERS].add(columns[MODIFIER].size());
+			for (final String modifier : modifiers) {
+				columns[MODIFIER].add(symbol(modifier));
+			}
+			columns[VARS].add(columns[VAR_NAME].size());
+			for (final VarDefinition var : type.getVarDefinitions()) {
+				columns[VAR_NAME].add(symbol(var.getName()));
+				columns[VAR_VALUE].add(expr(var.getValue()));
+			}
+
+			int child = NONE;
+			for (final Type typeParam : type.getTypeParams()) {
+				child = addType(typeParam, KIND_TYPE_PARAM, node, child, null, Collections.emptyList(), null);
+			}
+			for (final TypeDefinition definition : type.getSubDefinitions()) {
+				child = addDefinition(definition, node, child);
+			}
+			for (final AliasDefinition alias : type.getAliasDefinitions()) {
+				child = addType(alias.getValue(), KIND_ALIAS, node, child, alias.getName(), Collections.emptyList(),
+						null);
+			}
+			return node;
+		}
+
+		public int addDefinition(TypeDefinition definition, int parent, int previous) {
+			return addType(definition.getType(), KIND_DEFINITION, parent, previous, definition.getName(),
+					definition.getModifiers(), definition.getLocation());
+		}
+
+		public TypeArena build(boolean offHeap) {
+			// the range columns end with the size of their table, so that the range of the last row ends
+			columns[ANNOTATIONS].add(columns[ANNOTATION_NAME].size());
+			columns[ANNOTATION_PARAMS].add(columns[PARAM].size());
+			columns[MODIFIERS].add(columns[MODIFIER].size());
+			columns[VARS].add(columns[VAR_NAME].size());
+
+			final IntBuffer[] res = new IntBuffer[COLUMN_COUNT];
+			if (offHeap) {
+				int total = 0;
+				for (final IntColumn column : columns) {
+					total += column.size();
+				}
+				final IntBuffer buffer = ByteBuffer.allocateDirect(total * Integer.BYTES)
+						.order(ByteOrder.nativeOrder()).asIntBuffer();
+				for (int i = 0; i < COLUMN_COUNT; i++) {
+					buffer.limit(buffer.position() + columns[i].size());
+					res[i] = buffer.slice();
+					res[i].put(columns[i].values, 0, columns[i].size());
+					buffer.position(buffer.limit());
+				}
+			} else {
+				for (int i = 0; i < COLUMN_COUNT; i++) {
+					res[i] = IntBuffer.wrap(Arrays.copyOf(columns[i].values, columns[i].size()));
+				}
+			}
+			return new TypeArena(res, nodeCount, symbols.toArray(new String[0]), exprs.toArray(new Expr[0]),
+					offHeap);
+		}
+	}
+}
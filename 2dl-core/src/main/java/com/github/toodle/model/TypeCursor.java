@@ -0,0 +1,173 @@
+package com.github.toodle.model;
+
+/**
+ * A position in a {@link TypeArena}, which is moved from node to node without allocating. The accessors read the
+ * node the cursor is on; the annotation accessors take the index of the annotation in the node, from 0 to
+ * {@link #getAnnotationCount()} excluded.
+ * <p>
+ * A cursor is not thread-safe; threads reading the same arena use their own cursors, e.g from {@link #copy()}.
+ */
+public final class TypeCursor {
+	private final TypeArena arena;
+	private int node;
+
+	TypeCursor(TypeArena arena, int node) {
+		this.arena = arena;
+		this.node = node;
+	}
+
+	public TypeCursor copy() {
+		return new TypeCursor(arena, node);
+	}
+
+	public TypeArena getArena() {
+		return arena;
+	}
+
+	/**
+	 * Return the index of the node, in depth-first order.
+	 */
+	public int getNode() {
+		return node;
+	}
+
+	/**
+	 * Move to the first child of the node: the first type parameter, sub-definition or alias.
+	 * @return {@code false} if the node has no child, in which case the cursor does not move.
+	 */
+	public boolean toFirstChild() {
+		return moveTo(arena.get(TypeArena.FIRST_CHILD, node));
+	}
+
+	/**
+	 * @return {@code false} if the node is the last child of its parent, in which case the cursor does not move.
+	 */
+	public boolean toNextSibling() {
+		return moveTo(arena.get(TypeArena.NEXT_SIBLING, node));
+	}
+
+	/**
+	 * @return {@code false} if the node is the root type, in which case the cursor does not move.
+	 */
+	public boolean toParent() {
+		return moveTo(arena.get(TypeArena.PARENT, node));
+	}
+
+	private boolean moveTo(int target) {
+		if (target == TypeArena.NONE) return false;
+		node = target;
+		return true;
+	}
+
+	public boolean hasChildren() {
+		return arena.get(TypeArena.FIRST_CHILD, node) != TypeArena.NONE;
+	}
+
+	/**
+	 * Return one of {@link TypeArena#KIND_ROOT}, {@link TypeArena#KIND_TYPE_PARAM}, {@link TypeArena#KIND_DEFINITION}
+	 * or {@link TypeArena#KIND_ALIAS}.
+	 */
+	public int getKind() {
+		return arena.get(TypeArena.KIND, node);
+	}
+
+	public String getTypeName() {
+		return arena.getSymbol(arena.get(TypeArena.TYPE_NAME, node));
+	}
+
+	/**
+	 * Return the name of the definition or alias, or {@code null} for the root type and type parameters.
+	 */
+	public String getName() {
+		return arena.getSymbol(arena.get(TypeArena.NAME, node));
+	}
+
+	/**
+	 * Return the location of the definition, or {@code null}.
+	 */
+	public SourceLocation getLocation() {
+		final int fileName = arena.get(TypeArena.FILE_NAME, node);
+		return fileName == TypeArena.NONE ? null
+				: new SourceLocation(arena.getSymbol(fileName), arena.get(TypeArena.LINE, node));
+	}
+
+	public int getModifierCount() {
+		return arena.get(TypeArena.MODIFIERS, node + 1) - arena.get(TypeArena.MODIFIERS, node);
+	}
+
+	public String getModifier(int index) {
+		return arena.getSymbol(arena.get(TypeArena.MODIFIER, arena.get(TypeArena.MODIFIERS, node) + index));
+	}
+
+	public boolean hasModifier(String modifier) {
+		for (int i = 0; i < getModifierCount(); i++) {
+			if (getModifier(i).equals(modifier)) return true;
+		}
+		return false;
+	}
+
+	public int getAnnotationCount() {
+		return arena.get(TypeArena.ANNOTATIONS, node + 1) - arena.get(TypeArena.ANNOTATIONS, node);
+	}
+
+	public String getAnnotationName(int index) {
+		return arena.getSymbol(arena.get(TypeArena.ANNOTATION_NAME, arena.get(TypeArena.ANNOTATIONS, node) + index));
+	}
+
+	/**
+	 * Return the index of the annotation with the specified name, or -1.
+	 */
+	public int indexOfAnnotation(String annotationName) {
+		for (int i = 0; i < getAnnotationCount(); i++) {
+			if (getAnnotationName(i).equals(annotationName)) return i;
+		}
+		return -1;
+	}
+
+	public int getParamCount(int annotationIndex) {
+		final int annotation = arena.get(TypeArena.ANNOTATIONS, node) + annotationIndex;
+		return arena.get(TypeArena.ANNOTATION_PARAMS, annotation + 1)
+				- arena.get(TypeArena.ANNOTATION_PARAMS, annotation);
+	}
+
+	/**
+	 * Return a parameter of an annotation. The expression is unmodifiable.
+	 */
+	public Expr getParam(int annotationIndex, int paramIndex) {
+		final int annotation = arena.get(TypeArena.ANNOTATIONS, node) + annotationIndex;
+		final int param = arena.get(TypeArena.ANNOTATION_PARAMS, annotation) + paramIndex;
+		return arena.getExpr(arena.get(TypeArena.PARAM, param));
+	}
+
+	public int getVarCount() {
+		return arena.get(TypeArena.VARS, node + 1) - arena.get(TypeArena.VARS, node);
+	}
+
+	public String getVarName(int index) {
+		return arena.getSymbol(arena.get(TypeArena.VAR_NAME, arena.get(TypeArena.VARS, node) + index));
+	}
+
+	/**
+	 * Return the value of a var. The expression is unmodifiable.
+	 */
+	public Expr getVarValue(int index) {
+		return arena.getExpr(arena.get(TypeArena.VAR_VALUE, arena.get(TypeArena.VARS, node) + index));
+	}
+
+	/**
+	 * Return a new mutable type with the content of the node and its descendants.
+	 */
+	public Type toType() {
+		return arena.toType(node, null);
+	}
+
+	/**
+	 * Return a new mutable definition with the content of the node and its descendants. The node must be a
+	 * definition.
+	 * @param parent The parent of the type of the definition.
+	 */
+	public TypeDefinition toTypeDefinition(Type parent) {
+		if (getKind() != TypeArena.KIND_DEFINITION) throw new IllegalStateException("Not a definition: " + node);
+		return arena.toTypeDefinition(node, parent);
+	}
+}
@@ -1,7 +1,9 @@
 package com.github.toodle.model;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import com.github.visitorj.IdentifiedVisitable;
@@ -14,16 +16,17 @@ import com.github.toodle.services.ToodleVisitor;
 
 public class TypeDefinition implements Visitable<ToodleVisitor> {
 	private String name;
-	private final Set<String> modifiers = new HashSet<>();
+	private final ArraySet<String> modifiers;
 	private Type type;
-	private final VisitableList<ToodleVisitor> visitableChildren = new VisitableList<>();
 	private SourceLocation location;
+	private boolean frozen;
+	// the content hash of a frozen definition, computed on first use; 0 if not computed
+	private volatile long contentHash;
 
 	public TypeDefinition(String name, Collection<String> modifiers, Type type) {
 		this.name = name;
 		this.type = type;
-		this.modifiers.addAll(modifiers);
-		visitableChildren.add(type);
+		this.modifiers = new ArraySet<>(modifiers);
 	}
 
 	public String getName() {
@@ -31,15 +34,32 @@ public class TypeDefinition implements Visitable<ToodleVisitor> {
 	}
 
 	public void setName(String name) {
+		checkNotFrozen();
 		this.name = name;
+		containerChanged();
 	}
 
 	public Type getType() {
 		return type;
 	}
 
+	/**
+	 * Set the type of this definition. The container is the parent of the current type, or of the new type if there
+	 * is no current type: the parent of the new type may be another container if the type is shared, e.g by
+	 * {@code ShareIdenticalTypes}.
+	 */
 	public void setType(Type type) {
+		checkNotFrozen();
+		final Type container = this.type != null ? this.type.getParent() : type != null ? type.getParent() : null;
 		this.type = type;
+		if (container != null) container.subDefinitionChanged();
+	}
+
+	/**
+	 * Notify the type containing this definition, which is the parent of its type, that it must update its indexes.
+	 */
+	private void containerChanged() {
+		if (type != null && type.getParent() != null) type.getParent().subDefinitionChanged();
 	}
 
 	public Set<String> getModifiers() {
@@ -62,9 +82,59 @@ public class TypeDefinition implements Visitable<ToodleVisitor> {
 
 	@Override
 	public Iterable<IdentifiedVisitable<ToodleVisitor>> getVisitableChildren() {
+		final VisitableList<ToodleVisitor> visitableChildren = new VisitableList<>();
+		visitableChildren.add(type);
 		return visitableChildren;
 	}
 
+	/**
+	 * Return whether {@code o} is a definition with the same name, the same modifiers in the same order, and an equal
+	 * type. Locations are not compared.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof TypeDefinition)) return false;
+		final TypeDefinition other = (TypeDefinition) o;
+		if (!Objects.equals(name, other.name) || modifiers.size() != other.modifiers.size()) return false;
+		final Iterator<String> otherModifiers = other.modifiers.iterator();
+		for (final String modifier : modifiers) {
+			if (!modifier.equals(otherModifiers.next())) return false;
+		}
+		return Objects.equals(type, other.type);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, modifiers, type);
+	}
+
+	/**
+	 * Return a 64-bit hash of the name, modifiers and type of this definition, consistent with
+	 * {@link #equals(Object)}, and which only depends on the content of the definition. The hash is cached if the
+	 * definition is frozen.
+	 * @see Type#getContentHash()
+	 */
+	public long getContentHash() {
+		return getContentHash(null);
+	}
+
+	/**
+	 * Return the content hash of this definition, memoizing the hashes of unfrozen types.
+	 * @see Type#getContentHash(Map)
+	 */
+	public long getContentHash(Map<Type, Long> hashes) {
+		long res = contentHash;
+		if (res != 0) return res;
+		res = ContentHash.add(ContentHash.SEED, name);
+		for (final String modifier : modifiers) {
+			res = ContentHash.add(res, modifier);
+		}
+		res = ContentHash.add(res, type == null ? 0 : type.getContentHash(hashes));
+		if (frozen) contentHash = res;
+		return res;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
@@ -79,6 +149,22 @@ public class TypeDefinition implements Visitable<ToodleVisitor> {
 	}
 
 	public void setLocation(SourceLocation location) {
+		checkNotFrozen();
 		this.location = location;
 	}
+
+	/**
+	 * Make this definition and its type deeply unmodifiable.
+	 * @see Type#freeze()
+	 */
+	public void freeze() {
+		if (frozen) return;
+		frozen = true;
+		modifiers.freeze();
+		if (type != null) type.freeze();
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) throw new UnsupportedOperationException("The definition is frozen: " + name);
+	}
 }
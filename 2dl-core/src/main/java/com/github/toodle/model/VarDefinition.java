@@ -1,12 +1,21 @@
 package com.github.toodle.model;
 
+import java.util.Objects;
+
 public class VarDefinition {
 	private final String name;
 	private final Expr value;
+	// null if unknown
+	private final SourceLocation location;
 
 	public VarDefinition(String name, Expr value) {
+		this(name, value, null);
+	}
+
+	public VarDefinition(String name, Expr value, SourceLocation location) {
 		this.name = name;
 		this.value = value;
+		this.location = location;
 	}
 
 	public String getName() {
@@ -17,4 +26,25 @@ public class VarDefinition {
 		return value;
 	}
 
+	/**
+	 * Return the location of the definition, or {@code null} if unknown. Locations are not compared by
+	 * {@link #equals(Object)}.
+	 */
+	public SourceLocation getLocation() {
+		return location;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof VarDefinition)) return false;
+		final VarDefinition other = (VarDefinition) o;
+		return Objects.equals(name, other.name) && Objects.equals(value, other.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, value);
+	}
+
 }
@@ -0,0 +1,247 @@
+package com.github.toodle.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.toodle.antlr.MyToodleListener;
+import com.github.toodle.model.Expr;
+import com.github.toodle.model.SourceLocation;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.Var;
+
+/**
+ * A hand-written parser for the {@code Toodle.g4} grammar, which builds the same model as {@link MyToodleListener}
+ * without the ANTLR runtime. The grammar is LL(1), so each rule is parsed by looking at the current token only.
+ * <p>
+ * Unlike the ANTLR parser, which reports syntax errors and recovers, this parser stops at the first syntax error
+ * with a {@link ToodleSyntaxException}.
+ */
+public class RecursiveDescentParser {
+	private static final String variablePrefix = "$";
+	private final Scanner scanner;
+	private final String fileName;
+
+	/**
+	 * @param input The definitions in 2dl format.
+	 * @param length The number of characters of {@code input} to parse.
+	 * @param fileName The name of the parsed file, used in the source location of definitions.
+	 */
+	public RecursiveDescentParser(char[] input, int length, String fileName) {
+		this.scanner = new Scanner(input, length, fileName);
+		this.fileName = fileName;
+	}
+
+	public RecursiveDescentParser(String input, String fileName) {
+		this(input.toCharArray(), input.length(), fileName);
+	}
+
+	/**
+	 * Parse the definitions, without expanding them.
+	 */
+	public Type parse() {
+		final Type rootType = new Type(MyToodleListener.ROOT_TYPE_NAME, null);
+		definitions(rootType, Scanner.EOF);
+		expect(Scanner.EOF);
+		return rootType;
+	}
+
+	/**
+	 * definitions : NL* statement? (NL+ statement)* NL*
+	 */
+	private void definitions(Type scope, int endKind) {
+		skipNewLines();
+		while (scanner.getKind() != endKind) {
+			statement(scope);
+			if (scanner.getKind() != Scanner.NL) break;
+			skipNewLines();
+		}
+	}
+
+	/**
+	 * statement : definition | alias_definition | let_definition
+	 */
+	private void statement(Type scope) {
+		switch (scanner.getKind()) {
+		case Scanner.ALIAS:
+			aliasDefinition(scope);
+			break;
+		case Scanner.LET:
+			letDefinition(scope);
+			break;
+		case Scanner.IDENT:
+			definition(scope);
+			break;
+		default:
+			throw unexpected();
+		}
+	}
+
+	/**
+	 * alias_definition : 'alias' IDENT '=' type
+	 */
+	private void aliasDefinition(Type scope) {
+		final int line = scanner.getLine();
+		scanner.next();
+		final String name = expect(Scanner.IDENT);
+		expect(Scanner.EQUALS);
+		scope.addAliasDefinition(name, type(scope), new SourceLocation(fileName, line));
+	}
+
+	/**
+	 * let_definition : 'let' VARIABLE '=' expr
+	 */
+	private void letDefinition(Type scope) {
+		final int line = scanner.getLine();
+		scanner.next();
+		final String name = expect(Scanner.VARIABLE).substring(variablePrefix.length());
+		expect(Scanner.EQUALS);
+		scope.addVarDefinition(name, expr(), new SourceLocation(fileName, line));
+	}
+
+	/**
+	 * definition : IDENT+ (':' type)?
+	 * <p>
+	 * Definitions without a type are not part of the model.
+	 */
+	private void definition(Type scope) {
+		final int line = scanner.getLine();
+		final List<String> identifiers = new ArrayList<>();
+		do {
+			identifiers.add(scanner.getSymbol());
+			scanner.next();
+		} while (scanner.getKind() == Scanner.IDENT);
+
+		if (scanner.getKind() != Scanner.COLON) return;
+		scanner.next();
+		final Type type = type(scope);
+		final List<String> modifiers = identifiers.subList(0, identifiers.size() - 1);
+		final TypeDefinition definition = new TypeDefinition(identifiers.get(identifiers.size() - 1), modifiers,
+				type);
+		definition.setLocation(new SourceLocation(fileName, line));
+		scope.getSubDefinitions().add(definition);
+	}
+
+	/**
+	 * type : IDENT ('<' typeParams '>')? annotation* ('{' definitions '}')?
+	 * <p>
+	 * typeParams : type (',' type)*
+	 */
+	private Type type(Type parent) {
+		final Type type = new Type(expect(Scanner.IDENT), parent);
+		if (scanner.getKind() == Scanner.LT) {
+			scanner.next();
+			// the parent of type parameters is the type they belong to
+			type.getTypeParams().add(type(type));
+			while (scanner.getKind() == Scanner.COMMA) {
+				scanner.next();
+				type.getTypeParams().add(type(type));
+			}
+			expect(Scanner.GT);
+		}
+		while (scanner.getKind() == Scanner.IDENT) {
+			annotation(type);
+		}
+		if (scanner.getKind() == Scanner.LBRACE) {
+			scanner.next();
+			definitions(type, Scanner.RBRACE);
+			expect(Scanner.RBRACE);
+		}
+		return type;
+	}
+
+	/**
+	 * annotation : IDENT ('(' expr (',' expr)* ')')?
+	 */
+	private void annotation(Type type) {
+		final TypeAnnotation annotation = new TypeAnnotation();
+		final String name = expect(Scanner.IDENT);
+		annotation.setName(name);
+		if (scanner.getKind() == Scanner.LPAREN) {
+			scanner.next();
+			annotation.getExprParams_mutable().add(expr());
+			while (scanner.getKind() == Scanner.COMMA) {
+				scanner.next();
+				annotation.getExprParams_mutable().add(expr());
+			}
+			expect(Scanner.RPAREN);
+		}
+		type.getAnnotations().put(name, annotation);
+	}
+
+	/**
+	 * expr : NUMBER | string | VARIABLE | array
+	 * <p>
+	 * string : IDENT | QUOTED_STRING | MULTILINE_STRING
+	 */
+	private Expr expr() {
+		final Expr res;
+		switch (scanner.getKind()) {
+		case Scanner.NUMBER:
+			res = Expr.parseNumber(scanner.getText());
+			break;
+		case Scanner.IDENT:
+			res = new Expr(scanner.getSymbol());
+			break;
+		case Scanner.QUOTED_STRING:
+		case Scanner.MULTILINE_STRING:
+			res = StringLiterals.toExpr(scanner.getText());
+			break;
+		case Scanner.VARIABLE:
+			res = new Expr(new Var(scanner.getText().substring(variablePrefix.length())));
+			break;
+		case Scanner.LBRACKET:
+			return array();
+		default:
+			throw unexpected();
+		}
+		scanner.next();
+		return res;
+	}
+
+	/**
+	 * array : '[' NL* (expr NL*)* ']'
+	 */
+	private Expr array() {
+		scanner.next();
+		final List<Expr> elements = new ArrayList<>();
+		skipNewLines();
+		while (scanner.getKind() != Scanner.RBRACKET) {
+			elements.add(expr());
+			skipNewLines();
+		}
+		scanner.next();
+		return Expr.packList(elements);
+	}
+
+	private void skipNewLines() {
+		while (scanner.getKind() == Scanner.NL) {
+			scanner.next();
+		}
+	}
+
+	/**
+	 * Check that the current token is of the specified kind, and move to the next token.
+	 * @return The text of the current token, as a canonical instance for identifiers.
+	 */
+	private String expect(int kind) {
+		if (scanner.getKind() != kind) {
+			throw scanner.error(String.format("expecting %s, found %s", Scanner.getName(kind), describeToken()));
+		}
+		final String res = kind == Scanner.EOF ? null
+				: kind == Scanner.IDENT ? scanner.getSymbol() : scanner.getText();
+		scanner.next();
+		return res;
+	}
+
+	private ToodleSyntaxException unexpected() {
+		return scanner.error("unexpected " + describeToken());
+	}
+
+	private String describeToken() {
+		final int kind = scanner.getKind();
+		if (kind == Scanner.EOF || kind == Scanner.NL) return Scanner.getName(kind);
+		return "'" + scanner.getText() + "'";
+	}
+}
@@ -0,0 +1,360 @@
+package com.github.toodle.parser;
+
+import com.github.toodle.model.Symbols;
+
+/**
+ * Splits 2dl text into tokens, following the lexer rules of {@code Toodle.g4}: the longest match wins, and keywords
+ * win over identifiers of the same length. White space, comments and continuation lines are skipped.
+ * <p>
+ * Tokens are not materialized: the scanner exposes the kind and position of the current token, and its text on
+ * demand.
+ */
+class Scanner {
+	public static final int EOF = 0;
+	public static final int NL = 1;
+	public static final int IDENT = 2;
+	public static final int NUMBER = 3;
+	public static final int VARIABLE = 4;
+	public static final int QUOTED_STRING = 5;
+	public static final int MULTILINE_STRING = 6;
+	public static final int ALIAS = 7;
+	public static final int LET = 8;
+	public static final int EQUALS = 9;
+	public static final int COLON = 10;
+	public static final int COMMA = 11;
+	public static final int LT = 12;
+	public static final int GT = 13;
+	public static final int LPAREN = 14;
+	public static final int RPAREN = 15;
+	public static final int LBRACE = 16;
+	public static final int RBRACE = 17;
+	public static final int LBRACKET = 18;
+	public static final int RBRACKET = 19;
+
+	private static final String[] names = { "<EOF>", "new line", "identifier", "number", "variable", "string",
+			"string", "'alias'", "'let'", "'='", "':'", "','", "'<'", "'>'", "'('", "')'", "'{'", "'}'", "'['",
+			"']'" };
+
+	private final char[] input;
+	private final int length;
+	private final String fileName;
+	private final Symbols.Cache symbols = new Symbols.Cache();
+	// position of the next character to scan
+	private int pos;
+	private int line = 1;
+	private int lineStart;
+
+	// current token
+	private int kind;
+	private int start;
+	private int end;
+	private int tokenLine;
+	private int tokenColumn;
+
+	public Scanner(char[] input, int length, String fileName) {
+		this.input = input;
+		this.length = length;
+		this.fileName = fileName;
+		next();
+	}
+
+	public int getKind() {
+		return kind;
+	}
+
+	public int getLine() {
+		return tokenLine;
+	}
+
+	public String getText() {
+		return new String(input, start, end - start);
+	}
+
+	/**
+	 * Return the text of the current token, as a canonical instance (see {@link Symbols}).
+	 */
+	public String getSymbol() {
+		return symbols.intern(input, start, end);
+	}
+
+	public static String getName(int kind) {
+		return names[kind];
+	}
+
+	/**
+	 * Move to the next token.
+	 */
+	public void next() {
+		skipIgnored();
+		start = pos;
+		tokenLine = line;
+		tokenColumn = pos - lineStart;
+		if (pos >= length) {
+			kind = EOF;
+			end = pos;
+			return;
+		}
+
+		final char c = input[pos];
+		switch (c) {
+		case '\r':
+		case '\n':
+			kind = NL;
+			newLine(c);
+			pos++;
+			break;
+		case '=':
+			symbol(EQUALS);
+			break;
+		case ':':
+			symbol(COLON);
+			break;
+		case ',':
+			symbol(COMMA);
+			break;
+		case '<':
+			symbol(LT);
+			break;
+		case '>':
+			symbol(GT);
+			break;
+		case '(':
+			symbol(LPAREN);
+			break;
+		case ')':
+			symbol(RPAREN);
+			break;
+		case '{':
+			symbol(LBRACE);
+			break;
+		case '}':
+			symbol(RBRACE);
+			break;
+		case '[':
+			symbol(LBRACKET);
+			break;
+		case ']':
+			symbol(RBRACKET);
+			break;
+		case '"':
+			scanString();
+			break;
+		case '$':
+			scanVariable();
+			break;
+		default:
+			scanIdentOrNumber();
+			break;
+		}
+		end = pos;
+	}
+
+	/**
+	 * Return a syntax error located at the current token.
+	 */
+	public ToodleSyntaxException error(String message) {
+		return new ToodleSyntaxException(fileName, tokenLine, tokenColumn, message);
+	}
+
+	private void symbol(int symbolKind) {
+		kind = symbolKind;
+		pos++;
+	}
+
+	private void skipIgnored() {
+		while (pos < length) {
+			final char c = input[pos];
+			if (c == ' ' || c == '\t') {
+				pos++;
+			} else if (c == '\\' && pos + 1 < length && isNewLine(input[pos + 1])) {
+				// continuation line
+				pos++;
+				while (pos < length && isNewLine(input[pos])) {
+					newLine(input[pos]);
+					pos++;
+				}
+			} else if (c == '/' && pos + 1 < length && input[pos + 1] == '/') {
+				while (pos < length && !isNewLine(input[pos])) {
+					pos++;
+				}
+			} else if (c == '/' && pos + 1 < length && input[pos + 1] == '*') {
+				final int commentEnd = indexOf("*/", pos + 2);
+				if (commentEnd < 0) return;
+				while (pos < commentEnd + 2) {
+					newLine(input[pos]);
+					pos++;
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void scanString() {
+		if (startsWith(StringLiterals.MULTILINE_DELIMITER, pos)) {
+			final int stringEnd = scanStringContent(pos + 3);
+			if (stringEnd >= 0 && startsWith(StringLiterals.MULTILINE_DELIMITER, stringEnd)) {
+				kind = MULTILINE_STRING;
+				for (; pos < stringEnd + 3; pos++) {
+					newLine(input[pos]);
+				}
+				return;
+			}
+		}
+		final int stringEnd = scanStringContent(pos + 1);
+		if (stringEnd < 0 || stringEnd >= length) throw error("Unterminated string");
+		kind = QUOTED_STRING;
+		for (; pos < stringEnd + 1; pos++) {
+			newLine(input[pos]);
+		}
+	}
+
+	/**
+	 * Return the index of the first double quote from {@code from}, skipping escape sequences, or -1 if an invalid
+	 * escape sequence is found first.
+	 */
+	private int scanStringContent(int from) {
+		int i = from;
+		while (i < length && input[i] != '"') {
+			if (input[i] == '\\') {
+				final int escapeLength = getEscapeLength(i);
+				if (escapeLength < 0) return -1;
+				i += escapeLength;
+			} else {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	private int getEscapeLength(int i) {
+		if (i + 1 >= length) return -1;
+		switch (input[i + 1]) {
+		case '"':
+		case '\\':
+		case '/':
+		case 'b':
+		case 'f':
+		case 'n':
+		case 'r':
+		case 't':
+			return 2;
+		case 'u':
+			for (int j = i + 2; j < i + 6; j++) {
+				if (j >= length || !isHexDigit(input[j])) return -1;
+			}
+			return 6;
+		default:
+			return -1;
+		}
+	}
+
+	private void scanVariable() {
+		int i = pos + 1;
+		while (i < length && (isIdentChar(input[i]) || input[i] == '-')) {
+			i++;
+		}
+		if (i == pos + 1) throw error("Invalid character: '$'");
+		kind = VARIABLE;
+		pos = i;
+	}
+
+	private void scanIdentOrNumber() {
+		int identEnd = pos;
+		while (identEnd < length && isIdentChar(input[identEnd])) {
+			identEnd++;
+		}
+		final int numberEnd = scanNumber(pos);
+		if (numberEnd < 0 && identEnd == pos) throw error("Invalid character: '" + input[pos] + "'");
+
+		// on a tie, numbers win over identifiers
+		if (numberEnd >= identEnd) {
+			kind = NUMBER;
+			pos = numberEnd;
+		} else {
+			kind = getKeywordOrIdent(pos, identEnd);
+			pos = identEnd;
+		}
+	}
+
+	/**
+	 * Return the end of the number starting at {@code from}, or -1 if there is none.
+	 */
+	private int scanNumber(int from) {
+		int i = from;
+		if (i < length && input[i] == '-') i++;
+		i = scanInt(i);
+		if (i < 0) return -1;
+		if (i + 1 < length && input[i] == '.' && isDigit(input[i + 1])) {
+			i += 2;
+			while (i < length && isDigit(input[i])) {
+				i++;
+			}
+		}
+		if (i < length && (input[i] == 'e' || input[i] == 'E')) {
+			int j = i + 1;
+			if (j < length && (input[j] == '+' || input[j] == '-')) j++;
+			j = scanInt(j);
+			if (j >= 0) i = j;
+		}
+		return i;
+	}
+
+	private int scanInt(int from) {
+		if (from >= length || !isDigit(input[from])) return -1;
+		if (input[from] == '0') return from + 1;
+		int i = from + 1;
+		while (i < length && isDigit(input[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private int getKeywordOrIdent(int from, int to) {
+		if (regionEquals("alias", from, to)) return ALIAS;
+		if (regionEquals("let", from, to)) return LET;
+		return IDENT;
+	}
+
+	private void newLine(char c) {
+		if (c == '\n') {
+			line++;
+			lineStart = pos + 1;
+		}
+	}
+
+	private boolean startsWith(String s, int from) {
+		return from + s.length() <= length && regionEquals(s, from, from + s.length());
+	}
+
+	private boolean regionEquals(String s, int from, int to) {
+		if (to - from != s.length()) return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (input[from + i] != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private int indexOf(String s, int from) {
+		for (int i = from; i + s.length() <= length; i++) {
+			if (startsWith(s, i)) return i;
+		}
+		return -1;
+	}
+
+	private static boolean isNewLine(char c) {
+		return c == '\r' || c == '\n';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit(char c) {
+		return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+	}
+
+	private static boolean isIdentChar(char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '*';
+	}
+}
@@ -0,0 +1,158 @@
+package com.github.toodle.parser;
+
+import java.util.regex.Pattern;
+
+import org.unbescape.java.JavaEscape;
+
+import com.github.toodle.model.Expr;
+
+/**
+ * Decoding of quoted and multiline string literals, shared by the parser backends.
+ */
+public class StringLiterals {
+	public static final String MULTILINE_DELIMITER = "\"\"\"";
+	private static final Pattern trimMultilineString = Pattern.compile("^[ \t]+\\|", Pattern.MULTILINE);
+
+	private StringLiterals() {
+	}
+
+	/**
+	 * Return a string expression for a quoted or multiline string literal, including its delimiters. The literal is
+	 * only decoded when the value of the expression is first accessed.
+	 */
+	public static Expr toExpr(String literal) {
+		return new Expr(() -> decode(literal));
+	}
+
+	/**
+	 * Return the value of a quoted or multiline string literal, including its delimiters.
+	 * <p>
+	 * The margins of multiline strings are trimmed and escape sequences are decoded in a single pass. Literals with
+	 * unicode or octal escape sequences, which are rare, are decoded by {@link JavaEscape#unescapeJava(String)}.
+	 */
+	public static String decode(String literal) {
+		final boolean multiline = literal.startsWith(MULTILINE_DELIMITER);
+		final int delimiterLength = multiline ? MULTILINE_DELIMITER.length() : 1;
+		final int start = delimiterLength;
+		final int end = literal.length() - delimiterLength;
+		final StringBuilder res = new StringBuilder(end - start);
+		boolean lineStart = multiline;
+		int i = start;
+		while (i < end) {
+			if (lineStart) {
+				lineStart = false;
+				i = skipMargin(literal, i, end);
+				continue;
+			}
+			final char c = literal.charAt(i);
+			if (c == '\\' && i + 1 < end) {
+				final char escaped = unescape(literal.charAt(i + 1));
+				if (escaped == 0) {
+					final char next = literal.charAt(i + 1);
+					if (next == 'u' || next >= '0' && next <= '7') return decodeSlow(literal, multiline);
+					// not an escape sequence: kept as is
+					res.append(c);
+					i++;
+				} else {
+					res.append(escaped);
+					i += 2;
+				}
+			} else {
+				res.append(c);
+				lineStart = multiline && isLineTerminator(c);
+				i++;
+			}
+		}
+		if (multiline) {
+			// the first and last line breaks are not part of the value; escaped line breaks are not line breaks
+			final int first = getFirstLineBreak(literal, start, end);
+			final int last = getLastLineBreak(literal, start, end);
+			if (last >= 0 && last != first) res.setLength(res.length() - 1);
+			if (first >= 0) res.deleteCharAt(0);
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Return the position following the margin of the line starting at {@code start}, or {@code start} if the line
+	 * has no margin.
+	 */
+	private static int skipMargin(String literal, int start, int end) {
+		int i = start;
+		while (i < end && (literal.charAt(i) == ' ' || literal.charAt(i) == '\t')) {
+			i++;
+		}
+		return i > start && i < end && literal.charAt(i) == '|' ? i + 1 : start;
+	}
+
+	/**
+	 * Return the position of the line break starting the value once margins are trimmed, or -1.
+	 */
+	private static int getFirstLineBreak(String literal, int start, int end) {
+		final int i = skipMargin(literal, start, end);
+		return i < end && literal.charAt(i) == '\n' ? i : -1;
+	}
+
+	/**
+	 * Return the position of the line break ending the value once margins are trimmed, or -1.
+	 */
+	private static int getLastLineBreak(String literal, int start, int end) {
+		// margins are only trimmed after a line break, so a trimmed margin at the end is preceded by a line break
+		int i = end - 1;
+		if (i >= start && literal.charAt(i) == '|') {
+			int marginStart = i;
+			while (marginStart > start && (literal.charAt(marginStart - 1) == ' '
+					|| literal.charAt(marginStart - 1) == '\t')) {
+				marginStart--;
+			}
+			if (marginStart < i && (marginStart == start || isLineTerminator(literal.charAt(marginStart - 1)))) {
+				i = marginStart - 1;
+			}
+		}
+		return i >= start && literal.charAt(i) == '\n' ? i : -1;
+	}
+
+	/**
+	 * Return whether a line starts after {@code c}, as for {@code ^} in {@link Pattern#MULTILINE} mode.
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * Return the character represented by a single-character escape sequence, or 0 if {@code c} does not start such
+	 * a sequence.
+	 */
+	private static char unescape(char c) {
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'f':
+			return '\f';
+		case 'r':
+			return '\r';
+		case '"':
+		case '\'':
+		case '\\':
+			return c;
+		default:
+			return 0;
+		}
+	}
+
+	private static String decodeSlow(String literal, boolean multiline) {
+		if (multiline) {
+			String s = literal.substring(3, literal.length() - 3);
+			s = trimMultilineString.matcher(s).replaceAll("");
+			if (s.startsWith("\n")) s = s.substring(1);
+			if (s.endsWith("\n")) s = s.substring(0, s.length() - 1);
+			return JavaEscape.unescapeJava(s);
+		} else {
+			return JavaEscape.unescapeJava(literal.substring(1, literal.length() - 1));
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.github.toodle.parser;
+
+public class ToodleSyntaxException extends RuntimeException {
+	private static final long serialVersionUID = 6518390465713262841L;
+	private final String fileName;
+	private final int line;
+	private final int column;
+
+	public ToodleSyntaxException(String fileName, int line, int column, String message) {
+		super(String.format("%sline %d:%d %s", fileName.isEmpty() ? "" : fileName + ": ", line, column, message));
+		this.fileName = fileName;
+		this.line = line;
+		this.column = column;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+}
@@ -0,0 +1,190 @@
+package com.github.toodle.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeDefinition;
+
+/**
+ * A compiled path expression selecting definitions, e.g {@code table/*[type=array][annotation=description]}. The
+ * syntax is:
+ *
+ * <pre>
+ * selector  := ['//'] step (('/' | '//') step)*
+ * step      := ('*' | name) predicate*
+ * predicate := '[' ('type' | 'annotation' | 'modifier' | 'typeParam') '=' name ']'
+ * </pre>
+ *
+ * The first step matches top-level definitions, or definitions at any depth if it follows {@code //}. A step
+ * following {@code /} matches the sub-definitions of the definitions matched by the previous step, and a step
+ * following {@code //} matches their descendants. Sub-definitions of type parameters, e.g of
+ * {@code array<object {...}>}, are sub-definitions of the definition of the type. A step matches definitions with the
+ * specified name, or any name for {@code *}, and:
+ * <ul>
+ * <li>{@code [type=t]}: whose type is named {@code t};
+ * <li>{@code [annotation=a]}: whose type has the annotation {@code a};
+ * <li>{@code [modifier=m]}: with the modifier {@code m};
+ * <li>{@code [typeParam=t]}: whose type has a type parameter named {@code t}.
+ * </ul>
+ * Selectors are evaluated by a {@link SelectorMatcher}, which evaluates several selectors in a single traversal.
+ */
+public final class Selector {
+	private final String expression;
+	private final List<Step> steps;
+
+	private Selector(String expression, List<Step> steps) {
+		this.expression = expression;
+		this.steps = steps;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the expression is not a valid selector.
+	 */
+	public static Selector compile(String expression) {
+		return new Selector(expression, Collections.unmodifiableList(new SelectorParser(expression).parse()));
+	}
+
+	/**
+	 * Return the definitions matched by this selector, in depth-first order.
+	 */
+	public List<TypeDefinition> select(Type rootType) {
+		return new SelectorMatcher(Collections.singletonList(this)).execute(rootType).get(this);
+	}
+
+	List<Step> getSteps() {
+		return steps;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/**
+	 * A step of a selector.
+	 */
+	static final class Step {
+		// whether the step follows '//', and may match definitions at any depth below the previous match
+		final boolean descendant;
+		// null for '*'
+		final String name;
+		final List<Predicate> predicates;
+
+		Step(boolean descendant, String name, List<Predicate> predicates) {
+			this.descendant = descendant;
+			this.name = name;
+			this.predicates = predicates;
+		}
+
+		boolean matches(TypeDefinition definition) {
+			if (name != null && !name.equals(definition.getName())) return false;
+			for (final Predicate predicate : predicates) {
+				if (!predicate.matches(definition)) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A predicate of a step.
+	 */
+	static final class Predicate {
+		static final String TYPE = "type";
+		static final String ANNOTATION = "annotation";
+		static final String MODIFIER = "modifier";
+		static final String TYPE_PARAM = "typeParam";
+		final String kind;
+		final String value;
+
+		Predicate(String kind, String value) {
+			this.kind = kind;
+			this.value = value;
+		}
+
+		boolean matches(TypeDefinition definition) {
+			final Type type = definition.getType();
+			switch (kind) {
+			case TYPE:
+				return value.equals(type.getName());
+			case ANNOTATION:
+				return type.getAnnotation(value) != null;
+			case MODIFIER:
+				return definition.hasModifier(value);
+			default:
+				for (final Type typeParam : type.getTypeParams()) {
+					if (value.equals(typeParam.getName())) return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Parses the steps of a selector.
+	 */
+	private static class SelectorParser {
+		private final String expression;
+		private int pos;
+
+		public SelectorParser(String expression) {
+			this.expression = expression;
+		}
+
+		public List<Step> parse() {
+			final List<Step> res = new ArrayList<>();
+			boolean descendant = consume("//");
+			do {
+				res.add(parseStep(descendant));
+				if (pos == expression.length()) return res;
+				if (!consume("/")) throw error("expected '/'");
+				descendant = consume("/");
+			} while (true);
+		}
+
+		private Step parseStep(boolean descendant) {
+			final String name = consume("*") ? null : parseName();
+			final List<Predicate> predicates = new ArrayList<>(0);
+			while (consume("[")) {
+				final String kind = parseName();
+				if (!kind.equals(Predicate.TYPE) && !kind.equals(Predicate.ANNOTATION)
+						&& !kind.equals(Predicate.MODIFIER) && !kind.equals(Predicate.TYPE_PARAM)) {
+					throw error("unknown predicate '" + kind + "'");
+				}
+				if (!consume("=")) throw error("expected '='");
+				predicates.add(new Predicate(kind, parseName()));
+				if (!consume("]")) throw error("expected ']'");
+			}
+			return new Step(descendant, name, predicates);
+		}
+
+		private String parseName() {
+			final int start = pos;
+			while (pos < expression.length() && isNameChar(expression.charAt(pos))) {
+				pos++;
+			}
+			if (pos == start) throw error("expected a name");
+			return expression.substring(start, pos);
+		}
+
+		private static boolean isNameChar(char c) {
+			return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '-' || c == '.';
+		}
+
+		private boolean consume(String s) {
+			if (!expression.startsWith(s, pos)) return false;
+			pos += s.length();
+			return true;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(
+					String.format("Invalid selector '%s' at position %d: %s", expression, pos, message));
+		}
+	}
+}
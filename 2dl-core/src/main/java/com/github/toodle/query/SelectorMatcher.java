@@ -0,0 +1,166 @@
+package com.github.toodle.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.TypeParamCollection;
+import com.github.toodle.query.Selector.Step;
+import com.github.toodle.services.ToodleVisitorWithContext;
+import com.github.visitorj.VisitEvent;
+import com.github.visitorj.VisitResult;
+
+/**
+ * Evaluates several selectors in a single depth-first traversal of a model, using a {@link ToodleVisitorWithContext}.
+ * <p>
+ * The selectors are compiled into one automaton, whose states are the steps of all selectors. The traversal keeps
+ * the states active at each definition on a stack: a definition matched by the step of an active state activates the
+ * next step of the selector for its descendants, or is a match of the selector if the step is the last one, and the
+ * state of a step following {@code //} stays active for the descendants. Subtrees in which no state is active are not
+ * visited. Instances are immutable and may be shared by threads.
+ */
+public class SelectorMatcher {
+	private final List<Selector> selectors;
+	// the step of each state, the selector of each state, and whether it is the last step of its selector
+	private final Step[] steps;
+	private final int[] selectorIndexes;
+	private final boolean[] last;
+	private final int[] initialStates;
+
+	public SelectorMatcher(Collection<Selector> selectors) {
+		this.selectors = Collections.unmodifiableList(new ArrayList<>(selectors));
+		final List<Step> steps = new ArrayList<>();
+		final List<Integer> selectorIndexes = new ArrayList<>();
+		initialStates = new int[this.selectors.size()];
+		for (int i = 0; i < this.selectors.size(); i++) {
+			initialStates[i] = steps.size();
+			for (final Step step : this.selectors.get(i).getSteps()) {
+				steps.add(step);
+				selectorIndexes.add(i);
+			}
+		}
+		this.steps = steps.toArray(new Step[0]);
+		this.selectorIndexes = selectorIndexes.stream().mapToInt(Integer::intValue).toArray();
+		this.last = new boolean[this.steps.length];
+		for (int state = 0; state < this.steps.length; state++) {
+			last[state] = state == this.steps.length - 1
+					|| this.selectorIndexes[state + 1] != this.selectorIndexes[state];
+		}
+	}
+
+	public List<Selector> getSelectors() {
+		return selectors;
+	}
+
+	/**
+	 * Return the definitions matched by each selector, in depth-first order.
+	 */
+	public Map<Selector, List<TypeDefinition>> execute(Type rootType) {
+		final Map<Selector, List<TypeDefinition>> res = new LinkedHashMap<>();
+		selectors.forEach(s -> res.put(s, new ArrayList<>()));
+		execute(rootType, (selector, definition) -> res.get(selector).add(definition));
+		return res;
+	}
+
+	/**
+	 * Call {@code handler} for each definition matched by a selector, in depth-first order. A definition matched by
+	 * several selectors is reported once per selector, in the order of the selectors.
+	 */
+	public void execute(Type rootType, BiConsumer<Selector, TypeDefinition> handler) {
+		rootType.accept(new Traversal(handler));
+	}
+
+	/**
+	 * A traversal of a model: the active states of the entered definitions are kept on a stack, the states of a
+	 * definition being stored after the states of its parent definition. The type parameters of a type share the
+	 * states of the definition of the type.
+	 */
+	private class Traversal extends ToodleVisitorWithContext {
+		private final BiConsumer<Selector, TypeDefinition> handler;
+		private int[] stack;
+		// the active states of the innermost entered definition are stack[froms[depth]..tos[depth])
+		private int[] froms = new int[16];
+		private int[] tos = new int[16];
+		private int depth;
+		// the index of the definition which last activated each state, so that states are pushed once per definition
+		private final int[] activatedBy = new int[steps.length];
+		private int definitionCount;
+
+		public Traversal(BiConsumer<Selector, TypeDefinition> handler) {
+			this.handler = handler;
+			stack = Arrays.copyOf(initialStates, Math.max(16, initialStates.length * 4));
+			tos[0] = initialStates.length;
+			Arrays.fill(activatedBy, -1);
+		}
+
+		/**
+		 * Push the states activated by a definition when it is entered, and pop them when it is left.
+		 */
+		@Override
+		public void event(VisitEvent event, TypeDefinition definition) {
+			super.event(event, definition);
+			if (event == VisitEvent.LEAVE) {
+				depth--;
+				return;
+			}
+			final int from = froms[depth];
+			final int to = tos[depth];
+			final int definitionIndex = definitionCount++;
+			int top = to;
+			for (int i = from; i < to; i++) {
+				final int state = stack[i];
+				final Step step = steps[state];
+				if (step.descendant) top = push(top, state, definitionIndex);
+				if (!step.matches(definition)) continue;
+				if (last[state]) {
+					handler.accept(selectors.get(selectorIndexes[state]), definition);
+				} else {
+					top = push(top, state + 1, definitionIndex);
+				}
+			}
+			if (++depth == froms.length) {
+				froms = Arrays.copyOf(froms, depth * 2);
+				tos = Arrays.copyOf(tos, depth * 2);
+			}
+			froms[depth] = to;
+			tos[depth] = top;
+		}
+
+		@Override
+		protected VisitResult onVisit(TypeDefinition definition, String identifier) {
+			// subtrees in which no state is active are skipped
+			return tos[depth] > froms[depth] ? VisitResult.CONTINUE : VisitResult.SKIP_CHILDREN;
+		}
+
+		@Override
+		protected VisitResult onVisit(Type type, String identifier) {
+			return VisitResult.CONTINUE;
+		}
+
+		@Override
+		protected VisitResult onVisit(TypeParamCollection typeParamCollection, String identifier) {
+			return VisitResult.CONTINUE;
+		}
+
+		@Override
+		protected VisitResult onVisit(TypeAnnotation annotation, String identifier) {
+			return VisitResult.SKIP_CHILDREN;
+		}
+
+		private int push(int top, int state, int definitionIndex) {
+			if (activatedBy[state] == definitionIndex) return top;
+			activatedBy[state] = definitionIndex;
+			if (top == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+			stack[top] = state;
+			return top + 1;
+		}
+	}
+}
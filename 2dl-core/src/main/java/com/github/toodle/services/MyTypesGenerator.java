@@ -111,15 +111,15 @@ public class MyTypesGenerator extends AbstractGenerator {
 
 	private String getAnnotationsParamsCall(Type annotationParamsType, boolean list) {
 		if (annotationParamsType.getName().equals("primitive")) {
-			return list ? "getObjectParams()" : "getObjectParams().get(0)";
+			return list ? "getObjectParams()" : "getObject(0)";
 		} else if (annotationParamsType.getName().equals("bool")) {
-			return list ? "getBooleanParams()" : "getBooleanParams().get(0)";
+			return list ? "getBooleanParams()" : "getBoolean(0)";
 		} else if (annotationParamsType.getName().equals("string")) {
-			return list ? "getStringParams()" : "getStringParams().get(0)";
+			return list ? "getStringParams()" : "getString(0)";
 		} else if (annotationParamsType.getName().equals("number")) {
-			return list ? "getNumberParams()" : "getNumberParams().get(0)";
+			return list ? "getNumberParams()" : "getBigDecimal(0)";
 		} else if (annotationParamsType.getName().equals("int")) {
-			return list ? "getIntParams()" : "getIntParams().get(0)";
+			return list ? "getIntParams()" : "getInt(0)";
 		} else if (annotationParamsType.getName().equals("variadic")) {
 			return getAnnotationsParamsCall(annotationParamsType.getTypeParams().get(0), true);
 		} else {
@@ -0,0 +1,281 @@
+package com.github.toodle.services;
+
+import static com.github.toodle.services.ToodleBinaryWriter.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.toodle.model.Expr;
+import com.github.toodle.model.SourceLocation;
+import com.github.toodle.model.Symbols;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.Var;
+
+/**
+ * A model written by {@link ToodleBinaryWriter}, memory-mapped from a file.
+ * <p>
+ * Opening a model only reads its header and the aliases and vars of the root type. Each root definition, with its
+ * descendants, is materialized on first access and then cached, so that the heap used is proportional to the part
+ * of the model actually accessed. The type of a materialized definition has the root type as parent; the
+ * sub-definitions of the root type are only populated by {@link #getRootType()}.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class ToodleBinaryModel {
+	private final ByteBuffer buffer;
+	private final int stringsOffset;
+	private final int stringCount;
+	private final int exprsOffset;
+	private final int annotationsOffset;
+	private final int typesOffset;
+	private final int definitionsOffset;
+	private final int indexOffset;
+	private final int rootTypeOffset;
+	// offset of the list of root definitions
+	private final int rootDefinitionsOffset;
+	private final int definitionCount;
+	private final Type rootType;
+	private final Map<Integer, TypeDefinition> definitions = new ConcurrentHashMap<>();
+	private final Symbols.Cache symbols = new Symbols.Cache();
+	private boolean complete;
+
+	public ToodleBinaryModel(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a 2dl binary model");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported 2dl binary model version: " + buffer.getInt(4));
+		}
+		stringsOffset = buffer.getInt(8);
+		exprsOffset = buffer.getInt(12);
+		annotationsOffset = buffer.getInt(16);
+		typesOffset = buffer.getInt(20);
+		definitionsOffset = buffer.getInt(24);
+		indexOffset = buffer.getInt(28);
+		rootTypeOffset = buffer.getInt(32);
+		stringCount = buffer.getInt(stringsOffset);
+		definitionCount = buffer.getInt(indexOffset);
+		rootDefinitionsOffset = getListOffset(typesOffset + rootTypeOffset, 2);
+
+		rootType = new Type(getSymbol(buffer.getInt(typesOffset + rootTypeOffset)), null);
+		readScope(typesOffset + rootTypeOffset, rootType);
+	}
+
+	/**
+	 * Memory-map a model file. The file must not be modified while the model is in use.
+	 */
+	public static ToodleBinaryModel open(Path file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			return new ToodleBinaryModel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Return the number of root definitions.
+	 */
+	public int getDefinitionCount() {
+		return definitionCount;
+	}
+
+	/**
+	 * Return the root definition at the specified position.
+	 */
+	public TypeDefinition getDefinition(int position) {
+		if (position < 0 || position >= definitionCount) {
+			throw new IndexOutOfBoundsException("Position: " + position + ", count: " + definitionCount);
+		}
+		return definitions.computeIfAbsent(position, p -> readDefinition(getDefinitionOffset(p), rootType));
+	}
+
+	/**
+	 * Return the first root definition with the specified name, or {@code null} if no such definition exists. Only
+	 * the names of the definitions compared during a binary search over the name index are read.
+	 * @throws NullPointerException if {@code name} is {@code null}.
+	 */
+	public TypeDefinition getDefinition(String name) {
+		Objects.requireNonNull(name, "The definition name must not be null");
+		int low = 0;
+		int high = definitionCount;
+		// find the first index entry not lower than name
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			final String midName = getString(buffer.getInt(getDefinitionOffset(getIndexEntry(mid))));
+			if (midName == null || midName.compareTo(name) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low == definitionCount) return null;
+		final TypeDefinition res = getDefinition(getIndexEntry(low));
+		return name.equals(res.getName()) ? res : null;
+	}
+
+	/**
+	 * Return the root type, after materializing all the root definitions.
+	 */
+	public synchronized Type getRootType() {
+		if (!complete) {
+			for (int i = 0; i < definitionCount; i++) {
+				rootType.getSubDefinitions().add(getDefinition(i));
+			}
+			complete = true;
+		}
+		return rootType;
+	}
+
+	/**
+	 * Return the offset of the root definition at the specified position.
+	 */
+	private int getDefinitionOffset(int position) {
+		return definitionsOffset + buffer.getInt(rootDefinitionsOffset + (position + 1) * Integer.BYTES);
+	}
+
+	private int getIndexEntry(int i) {
+		return buffer.getInt(indexOffset + (i + 1) * Integer.BYTES);
+	}
+
+	/**
+	 * Return the offset of the n-th list of a type record. Each list starts with its element count; the alias and
+	 * var lists have 2 integers per element.
+	 */
+	private int getListOffset(int typeOffset, int n) {
+		int offset = typeOffset + Integer.BYTES;
+		for (int i = 0; i < n; i++) {
+			offset += (buffer.getInt(offset) * (i == 3 ? 2 : 1) + 1) * Integer.BYTES;
+		}
+		return offset;
+	}
+
+	/**
+	 * Return the string at the specified index, as a canonical instance.
+	 */
+	private String getSymbol(int index) {
+		return symbols.intern(getString(index));
+	}
+
+	private String getString(int index) {
+		if (index == NULL_INDEX) return null;
+		if (index < 0 || index >= stringCount) throw new IllegalStateException("Invalid string index: " + index);
+		final int dataOffset = stringsOffset + (stringCount + 2) * Integer.BYTES;
+		final int start = buffer.getInt(stringsOffset + (index + 1) * Integer.BYTES);
+		final int end = buffer.getInt(stringsOffset + (index + 2) * Integer.BYTES);
+		final byte[] bytes = new byte[end - start];
+		final ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(dataOffset + start);
+		duplicate.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private Type readType(int offset, Type parent) {
+		final Type res = new Type(getSymbol(buffer.getInt(offset)), parent);
+		int position = offset + Integer.BYTES;
+
+		int count = buffer.getInt(position);
+		for (int i = 0; i < count; i++) {
+			position += Integer.BYTES;
+			res.getTypeParams().add(readType(typesOffset + buffer.getInt(position), res));
+		}
+		position += Integer.BYTES;
+
+		count = buffer.getInt(position);
+		for (int i = 0; i < count; i++) {
+			position += Integer.BYTES;
+			final TypeAnnotation annotation = readAnnotation(annotationsOffset + buffer.getInt(position));
+			res.getAnnotations().put(annotation.getName(), annotation);
+		}
+		position += Integer.BYTES;
+
+		count = buffer.getInt(position);
+		for (int i = 0; i < count; i++) {
+			position += Integer.BYTES;
+			res.getSubDefinitions().add(readDefinition(definitionsOffset + buffer.getInt(position), res));
+		}
+
+		readScope(offset, res);
+		return res;
+	}
+
+	/**
+	 * Read the aliases and vars defined in the type at {@code offset}.
+	 */
+	private void readScope(int offset, Type type) {
+		int position = getListOffset(offset, 3);
+		int count = buffer.getInt(position);
+		for (int i = 0; i < count; i++) {
+			final String name = getSymbol(buffer.getInt(position + Integer.BYTES));
+			type.addAliasDefinition(name, readType(typesOffset + buffer.getInt(position + 2 * Integer.BYTES), type));
+			position += 2 * Integer.BYTES;
+		}
+		position += Integer.BYTES;
+
+		count = buffer.getInt(position);
+		for (int i = 0; i < count; i++) {
+			final String name = getSymbol(buffer.getInt(position + Integer.BYTES));
+			type.addVarDefinition(name, readExpr(exprsOffset + buffer.getInt(position + 2 * Integer.BYTES)));
+			position += 2 * Integer.BYTES;
+		}
+	}
+
+	private TypeDefinition readDefinition(int offset, Type parent) {
+		final String name = getSymbol(buffer.getInt(offset));
+		int position = offset + Integer.BYTES;
+		final int modifierCount = buffer.getInt(position);
+		final List<String> modifiers = new ArrayList<>(modifierCount);
+		for (int i = 0; i < modifierCount; i++) {
+			position += Integer.BYTES;
+			modifiers.add(getSymbol(buffer.getInt(position)));
+		}
+		final int fileNameIndex = buffer.getInt(position + Integer.BYTES);
+		final int line = buffer.getInt(position + 2 * Integer.BYTES);
+		final Type type = readType(typesOffset + buffer.getInt(position + 3 * Integer.BYTES), parent);
+
+		final TypeDefinition res = new TypeDefinition(name, modifiers, type);
+		if (fileNameIndex != NULL_INDEX) res.setLocation(new SourceLocation(getString(fileNameIndex), line));
+		return res;
+	}
+
+	private TypeAnnotation readAnnotation(int offset) {
+		final TypeAnnotation res = new TypeAnnotation();
+		res.setName(getSymbol(buffer.getInt(offset)));
+		final int count = buffer.getInt(offset + Integer.BYTES);
+		for (int i = 0; i < count; i++) {
+			res.getExprParams_mutable().add(readExpr(exprsOffset + buffer.getInt(offset + (i + 2) * Integer.BYTES)));
+		}
+		return res;
+	}
+
+	private Expr readExpr(int offset) {
+		final byte tag = buffer.get(offset);
+		final int value = buffer.getInt(offset + 1);
+		switch (tag) {
+		case EXPR_NUMBER:
+			return Expr.parseNumber(getString(value));
+		case EXPR_STRING:
+			return new Expr(getString(value));
+		case EXPR_VAR:
+			return new Expr(new Var(getString(value)));
+		case EXPR_LIST:
+			final List<Expr> elements = new ArrayList<>(value);
+			for (int i = 0; i < value; i++) {
+				elements.add(readExpr(exprsOffset + buffer.getInt(offset + 1 + (i + 1) * Integer.BYTES)));
+			}
+			return Expr.packList(elements);
+		default:
+			throw new IllegalStateException("Invalid expression tag: " + tag);
+		}
+	}
+}
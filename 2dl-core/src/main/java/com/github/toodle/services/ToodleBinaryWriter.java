@@ -0,0 +1,247 @@
+package com.github.toodle.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.github.toodle.model.AliasDefinition;
+import com.github.toodle.model.Expr;
+import com.github.toodle.model.SourceLocation;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.VarDefinition;
+
+/**
+ * Writes a model in the binary format read by {@link ToodleBinaryModel}, typically after it has been read and
+ * expanded by {@code ToodleReader}.
+ * <p>
+ * The file starts with a header, followed by a string table and by the pools of expressions, annotations, types and
+ * definitions. Records reference strings by index, and records of other pools by offset from the start of the pool.
+ * All integers are big-endian. Records are written after the records they reference, and annotations and
+ * expressions shared by several types are written once.
+ *
+ * <pre>
+ * header:      MAGIC VERSION stringsOffset exprsOffset annotationsOffset typesOffset definitionsOffset indexOffset
+ *              rootTypeOffset
+ * strings:     count offset[count + 1] utf8Bytes
+ * expr:        tag (number|string|var: stringIndex | list: count exprOffset[count])
+ * annotation:  nameIndex count exprOffset[count]
+ * type:        nameIndex count typeOffset[count] count annotationOffset[count] count definitionOffset[count]
+ *              count (nameIndex typeOffset)[count] count (nameIndex exprOffset)[count]
+ * definition:  nameIndex count modifierIndex[count] fileNameIndex line typeOffset
+ * index:       count definitionPosition[count], the positions of the root definitions sorted by name
+ * </pre>
+ */
+public class ToodleBinaryWriter {
+	public static final int MAGIC = 0x32444C42; // "2DLB"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 9 * Integer.BYTES;
+	public static final byte EXPR_NUMBER = 0;
+	public static final byte EXPR_STRING = 1;
+	public static final byte EXPR_VAR = 2;
+	public static final byte EXPR_LIST = 3;
+	// index of the null string
+	public static final int NULL_INDEX = -1;
+
+	private final OutputStream out;
+	private final Map<String, Integer> stringIndexes = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+	private final Pool exprs = new Pool();
+	private final Pool annotations = new Pool();
+	private final Pool types = new Pool();
+	private final Pool definitions = new Pool();
+	private final Map<Expr, Integer> exprOffsets = new IdentityHashMap<>();
+	private final Map<TypeAnnotation, Integer> annotationOffsets = new IdentityHashMap<>();
+
+	/**
+	 * A section of the file, written in memory.
+	 */
+	private static class Pool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream data = new DataOutputStream(bytes);
+
+		public int size() {
+			return bytes.size();
+		}
+
+		public void writeInt(int value) {
+			try {
+				data.writeInt(value);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public void writeByte(int value) {
+			try {
+				data.writeByte(value);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public void writeInts(List<Integer> values) {
+			writeInt(values.size());
+			values.forEach(this::writeInt);
+		}
+	}
+
+	public ToodleBinaryWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	public void execute(Type rootType) throws IOException {
+		final int rootTypeOffset = writeType(rootType);
+		final Pool index = new Pool();
+		final List<TypeDefinition> rootDefinitions = rootType.getSubDefinitions();
+		// the sort is stable, so that the first of several definitions with the same name is found first
+		index.writeInts(IntStream.range(0, rootDefinitions.size()).boxed()
+				.sorted(Comparator.comparing(i -> rootDefinitions.get(i).getName(),
+						Comparator.nullsFirst(Comparator.naturalOrder())))
+				.collect(Collectors.toList()));
+		final Pool stringTable = writeStrings();
+
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		int offset = HEADER_SIZE;
+		for (final Pool pool : new Pool[] { stringTable, exprs, annotations, types, definitions, index }) {
+			data.writeInt(offset);
+			offset += pool.size();
+		}
+		data.writeInt(rootTypeOffset);
+		for (final Pool pool : new Pool[] { stringTable, exprs, annotations, types, definitions, index }) {
+			pool.bytes.writeTo(data);
+		}
+		data.flush();
+	}
+
+	private Pool writeStrings() {
+		final Pool res = new Pool();
+		final List<byte[]> encoded = strings.stream().map(s -> s.getBytes(StandardCharsets.UTF_8))
+				.collect(Collectors.toList());
+		res.writeInt(encoded.size());
+		int offset = 0;
+		for (final byte[] bytes : encoded) {
+			res.writeInt(offset);
+			offset += bytes.length;
+		}
+		res.writeInt(offset);
+		for (final byte[] bytes : encoded) {
+			res.bytes.write(bytes, 0, bytes.length);
+		}
+		return res;
+	}
+
+	private int getStringIndex(String s) {
+		if (s == null) return NULL_INDEX;
+		return stringIndexes.computeIfAbsent(s, k -> {
+			strings.add(k);
+			return strings.size() - 1;
+		});
+	}
+
+	private List<Integer> getStringIndexes(Collection<String> strings) {
+		return strings.stream().map(this::getStringIndex).collect(Collectors.toList());
+	}
+
+	private int writeType(Type type) {
+		final List<Integer> typeParamOffsets = type.getTypeParams().stream().map(this::writeType)
+				.collect(Collectors.toList());
+		final List<Integer> annotationOffsets = type.getAnnotations().values().stream().map(this::writeAnnotation)
+				.collect(Collectors.toList());
+		final List<Integer> definitionOffsets = type.getSubDefinitions().stream().map(this::writeDefinition)
+				.collect(Collectors.toList());
+		final List<AliasDefinition> aliases = new ArrayList<>(type.getAliasDefinitions());
+		final List<Integer> aliasOffsets = aliases.stream().map(a -> writeType(a.getValue()))
+				.collect(Collectors.toList());
+		final List<VarDefinition> vars = new ArrayList<>(type.getVarDefinitions());
+		final List<Integer> varOffsets = vars.stream().map(v -> writeExpr(v.getValue())).collect(Collectors.toList());
+
+		final int res = types.size();
+		types.writeInt(getStringIndex(type.getName()));
+		types.writeInts(typeParamOffsets);
+		types.writeInts(annotationOffsets);
+		types.writeInts(definitionOffsets);
+		types.writeInt(aliases.size());
+		for (int i = 0; i < aliases.size(); i++) {
+			types.writeInt(getStringIndex(aliases.get(i).getName()));
+			types.writeInt(aliasOffsets.get(i));
+		}
+		types.writeInt(vars.size());
+		for (int i = 0; i < vars.size(); i++) {
+			types.writeInt(getStringIndex(vars.get(i).getName()));
+			types.writeInt(varOffsets.get(i));
+		}
+		return res;
+	}
+
+	private int writeDefinition(TypeDefinition definition) {
+		final int typeOffset = writeType(definition.getType());
+		final SourceLocation location = definition.getLocation();
+
+		final int res = definitions.size();
+		definitions.writeInt(getStringIndex(definition.getName()));
+		definitions.writeInts(getStringIndexes(definition.getModifiers()));
+		definitions.writeInt(location == null ? NULL_INDEX : getStringIndex(location.getFileName()));
+		definitions.writeInt(location == null ? 0 : location.getLine());
+		definitions.writeInt(typeOffset);
+		return res;
+	}
+
+	private int writeAnnotation(TypeAnnotation annotation) {
+		final Integer offset = annotationOffsets.get(annotation);
+		if (offset != null) return offset;
+
+		final List<Integer> paramOffsets = annotation.getExprParams().stream().map(this::writeExpr)
+				.collect(Collectors.toList());
+		final int res = annotations.size();
+		annotations.writeInt(getStringIndex(annotation.getName()));
+		annotations.writeInts(paramOffsets);
+		annotationOffsets.put(annotation, res);
+		return res;
+	}
+
+	private int writeExpr(Expr expr) {
+		final Integer offset = exprOffsets.get(expr);
+		if (offset != null) return offset;
+
+		final int res;
+		if (expr.isList()) {
+			final List<Integer> elementOffsets = expr.getAsList().stream().map(this::writeExpr)
+					.collect(Collectors.toList());
+			res = exprs.size();
+			exprs.writeByte(EXPR_LIST);
+			exprs.writeInts(elementOffsets);
+		} else {
+			res = exprs.size();
+			if (expr.isBigDecimal()) {
+				exprs.writeByte(EXPR_NUMBER);
+				exprs.writeInt(getStringIndex(expr.getAsBigDecimal().toString()));
+			} else if (expr.isString()) {
+				exprs.writeByte(EXPR_STRING);
+				exprs.writeInt(getStringIndex(expr.getAsString()));
+			} else if (expr.isVar()) {
+				exprs.writeByte(EXPR_VAR);
+				exprs.writeInt(getStringIndex(expr.getAsVar().getName()));
+			} else {
+				throw new IllegalArgumentException("Unknown type: " + expr.getAsObject().getClass());
+			}
+		}
+		exprOffsets.put(expr, res);
+		return res;
+	}
+}
@@ -0,0 +1,265 @@
+package com.github.toodle.services;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.toodle.model.AliasDefinition;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.VarDefinition;
+
+/**
+ * Computes the changes between two versions of a model. Sub-definitions, annotations, aliases and vars are matched
+ * by name, and type parameters by position. A changed definition is reported through the changes of its modifiers
+ * and type, whose path is the path of the definition.
+ * <p>
+ * Subtrees with the same {@linkplain Type#getContentHash() content hash} are skipped. The hashes of frozen models are
+ * cached, so diffing them takes a time proportional to the number of changed types and to their number of
+ * sub-definitions. The hashes of the types of unfrozen models are computed once per call, bottom-up, so diffing them
+ * takes a time proportional to the size of the models. The models must not be modified during a call.
+ */
+public class ToodleDiff {
+	// the content hashes of unfrozen types, for the duration of a call
+	private final Map<Type, Long> contentHashes = new IdentityHashMap<>();
+
+	public enum ChangeKind {
+		ADDED, REMOVED, CHANGED
+	}
+
+	public enum ElementKind {
+		/**
+		 * A sub-definition. The values are {@link TypeDefinition}s.
+		 */
+		DEFINITION,
+		/**
+		 * The name of a type. The values are strings.
+		 */
+		TYPE_NAME,
+		/**
+		 * The modifiers of a definition. The values are sets of strings.
+		 */
+		MODIFIERS,
+		/**
+		 * The values are {@link TypeAnnotation}s.
+		 */
+		ANNOTATION,
+		/**
+		 * The values are {@link Type}s.
+		 */
+		TYPE_PARAM,
+		/**
+		 * The values are {@link Type}s.
+		 */
+		ALIAS,
+		/**
+		 * The values are {@code Expr}s.
+		 */
+		VAR
+	}
+
+	/**
+	 * A change of an element of a type.
+	 */
+	public static class Change {
+		private final ChangeKind kind;
+		private final ElementKind elementKind;
+		private final String path;
+		private final String name;
+		private final Object oldValue;
+		private final Object newValue;
+
+		public Change(ChangeKind kind, ElementKind elementKind, String path, String name, Object oldValue,
+				Object newValue) {
+			this.kind = kind;
+			this.elementKind = elementKind;
+			this.path = path;
+			this.name = name;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+
+		public ChangeKind getKind() {
+			return kind;
+		}
+
+		public ElementKind getElementKind() {
+			return elementKind;
+		}
+
+		/**
+		 * Return the path of the type containing the element: the names of the definitions from the root type,
+		 * separated by {@code /}, with the index of type parameters between {@code <} and {@code >}, e.g
+		 * {@code table/columns<0>}. The path of the root type is empty.
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Return the name of the definition, annotation, alias or var, the index of the type parameter, or
+		 * {@code null} for type names and modifiers.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Return the value in the old model, or {@code null} if the element was added.
+		 */
+		public Object getOldValue() {
+			return oldValue;
+		}
+
+		/**
+		 * Return the value in the new model, or {@code null} if the element was removed.
+		 */
+		public Object getNewValue() {
+			return newValue;
+		}
+
+		@Override
+		public String toString() {
+			final String where = name == null ? path : path.isEmpty() ? name : path + " " + name;
+			return String.format("%s %s %s: %s -> %s", kind, elementKind, where, oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Return the changes from {@code oldRootType} to {@code newRootType}, in depth-first order.
+	 */
+	public List<Change> execute(Type oldRootType, Type newRootType) {
+		final List<Change> changes = new ArrayList<>();
+		try {
+			diffType(changes, "", oldRootType, newRootType);
+		} finally {
+			contentHashes.clear();
+		}
+		return changes;
+	}
+
+	private void diffType(List<Change> changes, String path, Type oldType, Type newType) {
+		if (oldType.getContentHash(contentHashes) == newType.getContentHash(contentHashes)) return;
+
+		if (!oldType.getName().equals(newType.getName())) {
+			changes.add(new Change(ChangeKind.CHANGED, ElementKind.TYPE_NAME, path, null, oldType.getName(),
+					newType.getName()));
+		}
+		diffAnnotations(changes, path, oldType, newType);
+		diffTypeParams(changes, path, oldType.getTypeParams(), newType.getTypeParams());
+		diffSubDefinitions(changes, path, oldType, newType);
+		diffAliases(changes, path, oldType.getAliasDefinitionMap(), newType.getAliasDefinitionMap());
+		diffVars(changes, path, oldType.getVarDefinitionMap(), newType.getVarDefinitionMap());
+	}
+
+	private void diffAnnotations(List<Change> changes, String path, Type oldType, Type newType) {
+		for (final TypeAnnotation oldAnnotation : oldType.getAnnotations().values()) {
+			final TypeAnnotation newAnnotation = newType.getAnnotation(oldAnnotation.getName());
+			if (newAnnotation == null) {
+				changes.add(new Change(ChangeKind.REMOVED, ElementKind.ANNOTATION, path, oldAnnotation.getName(),
+						oldAnnotation, null));
+			} else if (!oldAnnotation.equals(newAnnotation)) {
+				changes.add(new Change(ChangeKind.CHANGED, ElementKind.ANNOTATION, path, oldAnnotation.getName(),
+						oldAnnotation, newAnnotation));
+			}
+		}
+		for (final TypeAnnotation newAnnotation : newType.getAnnotations().values()) {
+			if (oldType.getAnnotation(newAnnotation.getName()) == null) {
+				changes.add(new Change(ChangeKind.ADDED, ElementKind.ANNOTATION, path, newAnnotation.getName(), null,
+						newAnnotation));
+			}
+		}
+	}
+
+	private void diffTypeParams(List<Change> changes, String path, List<Type> oldTypeParams,
+			List<Type> newTypeParams) {
+		final int commonSize = Math.min(oldTypeParams.size(), newTypeParams.size());
+		for (int i = 0; i < commonSize; i++) {
+			final Type oldTypeParam = oldTypeParams.get(i);
+			final Type newTypeParam = newTypeParams.get(i);
+			if (oldTypeParam.getContentHash(contentHashes) == newTypeParam.getContentHash(contentHashes)) continue;
+			diffType(changes, path + "<" + i + ">", oldTypeParam, newTypeParam);
+		}
+		for (int i = commonSize; i < oldTypeParams.size(); i++) {
+			changes.add(new Change(ChangeKind.REMOVED, ElementKind.TYPE_PARAM, path, String.valueOf(i),
+					oldTypeParams.get(i), null));
+		}
+		for (int i = commonSize; i < newTypeParams.size(); i++) {
+			changes.add(new Change(ChangeKind.ADDED, ElementKind.TYPE_PARAM, path, String.valueOf(i), null,
+					newTypeParams.get(i)));
+		}
+	}
+
+	/**
+	 * Diff the sub-definitions matched by name. If several sub-definitions have the same name, only the first one is
+	 * compared, as it is the one returned by {@link Type#getSubDefinition(String)}.
+	 */
+	private void diffSubDefinitions(List<Change> changes, String path, Type oldType, Type newType) {
+		for (final TypeDefinition oldDefinition : oldType.getSubDefinitions()) {
+			final String name = oldDefinition.getName();
+			if (oldType.getSubDefinition(name) != oldDefinition) continue;
+			final TypeDefinition newDefinition = newType.getSubDefinition(name);
+			if (newDefinition == null) {
+				changes.add(new Change(ChangeKind.REMOVED, ElementKind.DEFINITION, path, name, oldDefinition, null));
+				continue;
+			}
+			if (oldDefinition.getContentHash(contentHashes) == newDefinition.getContentHash(contentHashes)) continue;
+			final String definitionPath = path.isEmpty() ? name : path + "/" + name;
+			if (!oldDefinition.getModifiers().equals(newDefinition.getModifiers())) {
+				changes.add(new Change(ChangeKind.CHANGED, ElementKind.MODIFIERS, definitionPath, null,
+						oldDefinition.getModifiers(), newDefinition.getModifiers()));
+			}
+			diffType(changes, definitionPath, oldDefinition.getType(), newDefinition.getType());
+		}
+		for (final TypeDefinition newDefinition : newType.getSubDefinitions()) {
+			final String name = newDefinition.getName();
+			if (newType.getSubDefinition(name) != newDefinition) continue;
+			if (oldType.getSubDefinition(name) == null) {
+				changes.add(new Change(ChangeKind.ADDED, ElementKind.DEFINITION, path, name, null, newDefinition));
+			}
+		}
+	}
+
+	private void diffAliases(List<Change> changes, String path, Map<String, AliasDefinition> oldAliases,
+			Map<String, AliasDefinition> newAliases) {
+		for (final AliasDefinition oldAlias : oldAliases.values()) {
+			final AliasDefinition newAlias = newAliases.get(oldAlias.getName());
+			if (newAlias == null) {
+				changes.add(new Change(ChangeKind.REMOVED, ElementKind.ALIAS, path, oldAlias.getName(),
+						oldAlias.getValue(), null));
+			} else if (oldAlias.getValue().getContentHash(contentHashes) != newAlias.getValue()
+					.getContentHash(contentHashes)) {
+				changes.add(new Change(ChangeKind.CHANGED, ElementKind.ALIAS, path, oldAlias.getName(),
+						oldAlias.getValue(), newAlias.getValue()));
+			}
+		}
+		for (final AliasDefinition newAlias : newAliases.values()) {
+			if (!oldAliases.containsKey(newAlias.getName())) {
+				changes.add(new Change(ChangeKind.ADDED, ElementKind.ALIAS, path, newAlias.getName(), null,
+						newAlias.getValue()));
+			}
+		}
+	}
+
+	private void diffVars(List<Change> changes, String path, Map<String, VarDefinition> oldVars,
+			Map<String, VarDefinition> newVars) {
+		for (final VarDefinition oldVar : oldVars.values()) {
+			final VarDefinition newVar = newVars.get(oldVar.getName());
+			if (newVar == null) {
+				changes.add(new Change(ChangeKind.REMOVED, ElementKind.VAR, path, oldVar.getName(), oldVar.getValue(),
+						null));
+			} else if (!oldVar.getValue().equals(newVar.getValue())) {
+				changes.add(new Change(ChangeKind.CHANGED, ElementKind.VAR, path, oldVar.getName(), oldVar.getValue(),
+						newVar.getValue()));
+			}
+		}
+		for (final VarDefinition newVar : newVars.values()) {
+			if (!oldVars.containsKey(newVar.getName())) {
+				changes.add(new Change(ChangeKind.ADDED, ElementKind.VAR, path, newVar.getName(), null,
+						newVar.getValue()));
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.github.toodle.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeDefinition;
+
+/**
+ * Inverted indexes of the definitions of a model, at any depth, by annotation name, type name and modifier, built
+ * in one pass over the root type. Results are in depth-first order, followed by the definitions added afterwards.
+ * <p>
+ * The index is not updated when the model is modified: definitions added to or removed from the model must be added
+ * to or removed from the index, and a definition whose type, annotations or modifiers are modified must be removed
+ * before the modification and added again after it. A definition shared by several types, e.g by
+ * {@code ShareIdenticalTypes}, is indexed once per occurrence.
+ */
+public class ToodleIndex {
+	private final Type rootType;
+	private final Map<TypeDefinition, Entry> entries = new IdentityHashMap<>();
+	private final Map<String, Set<Entry>> entriesByAnnotation = new HashMap<>();
+	private final Map<String, Set<Entry>> entriesByTypeName = new HashMap<>();
+	private final Map<String, Set<Entry>> entriesByModifier = new HashMap<>();
+
+	/**
+	 * An occurrence of a definition in the model.
+	 */
+	public static class Entry {
+		private final TypeDefinition definition;
+		private final Type container;
+		// the entry of the definition whose type contains the container, or null at the top level
+		private final Entry parent;
+		// the indexes of the type parameters from the type of the parent to the container, e.g <0>; usually empty
+		private final String typeParamPath;
+		// the other occurrences of the definition
+		private Entry next;
+
+		private Entry(TypeDefinition definition, Type container, Entry parent, String typeParamPath) {
+			this.definition = definition;
+			this.container = container;
+			this.parent = parent;
+			this.typeParamPath = typeParamPath;
+		}
+
+		public TypeDefinition getDefinition() {
+			return definition;
+		}
+
+		/**
+		 * Return the type whose sub-definitions contain the definition.
+		 */
+		public Type getContainer() {
+			return container;
+		}
+
+		/**
+		 * Return the path of the definition: the names of the definitions from the root type, separated by {@code /},
+		 * with the index of type parameters between {@code <} and {@code >}, e.g {@code database/tables<0>/name}.
+		 * The path is computed on each call.
+		 */
+		public String getPath() {
+			if (parent == null) return definition.getName();
+			return parent.getPath() + typeParamPath + "/" + definition.getName();
+		}
+
+		/**
+		 * Return the entry of the definition containing this one, or {@code null} for a top-level definition.
+		 */
+		public Entry getParent() {
+			return parent;
+		}
+
+		@Override
+		public String toString() {
+			return getPath();
+		}
+	}
+
+	public ToodleIndex(Type rootType) {
+		this.rootType = rootType;
+		indexDescendants(rootType, null, "");
+	}
+
+	/**
+	 * Index a definition and its descendants, which are, or will be, sub-definitions of {@code container}. The
+	 * container is found from its parents, in a time proportional to the number of sub-definitions of the types
+	 * containing it.
+	 * @param container The root type, or a type in the index.
+	 */
+	public void add(TypeDefinition definition, Type container) {
+		String typeParamPath = "";
+		Type type = container;
+		// find the definition of the container, going up type parameters
+		while (type != rootType) {
+			final Type parent = type.getParent();
+			if (parent == null) throw new IllegalArgumentException("Unknown container: " + container);
+			final int typeParamIndex = indexOf(parent.getTypeParams(), type);
+			if (typeParamIndex >= 0) {
+				typeParamPath = "<" + typeParamIndex + ">" + typeParamPath;
+				type = parent;
+				continue;
+			}
+			for (final TypeDefinition parentDefinition : parent.getSubDefinitions()) {
+				if (parentDefinition.getType() != type) continue;
+				final Entry parentEntry = entries.get(parentDefinition);
+				if (parentEntry == null) break;
+				index(definition, container, parentEntry, typeParamPath);
+				return;
+			}
+			throw new IllegalArgumentException("Unknown container: " + container);
+		}
+		index(definition, container, null, "");
+	}
+
+	private static int indexOf(List<Type> types, Type type) {
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i) == type) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Remove a definition and its descendants from the index.
+	 */
+	public void remove(TypeDefinition definition) {
+		final Entry entry = entries.remove(definition);
+		if (entry == null) return;
+		for (Entry occurrence = entry; occurrence != null; occurrence = occurrence.next) {
+			unindex(occurrence);
+		}
+		removeDescendants(definition.getType());
+	}
+
+	public Collection<Entry> getDefinitionsWithAnnotation(String annotationName) {
+		return get(entriesByAnnotation, annotationName);
+	}
+
+	public Collection<Entry> getDefinitionsOfType(String typeName) {
+		return get(entriesByTypeName, typeName);
+	}
+
+	public Collection<Entry> getDefinitionsWithModifier(String modifier) {
+		return get(entriesByModifier, modifier);
+	}
+
+	/**
+	 * Return the number of indexed occurrences of definitions.
+	 */
+	public int size() {
+		int res = 0;
+		for (final Entry entry : entries.values()) {
+			for (Entry occurrence = entry; occurrence != null; occurrence = occurrence.next) {
+				res++;
+			}
+		}
+		return res;
+	}
+
+	private static Collection<Entry> get(Map<String, Set<Entry>> index, String key) {
+		final Set<Entry> res = index.get(key);
+		return res == null ? Collections.emptySet() : Collections.unmodifiableSet(res);
+	}
+
+	private void index(TypeDefinition definition, Type container, Entry parent, String typeParamPath) {
+		final Entry entry = new Entry(definition, container, parent, typeParamPath);
+		entry.next = entries.put(definition, entry);
+		final Type type = definition.getType();
+		for (final String annotationName : type.getAnnotations().keySet()) {
+			add(entriesByAnnotation, annotationName, entry);
+		}
+		add(entriesByTypeName, type.getName(), entry);
+		for (final String modifier : definition.getModifiers()) {
+			add(entriesByModifier, modifier, entry);
+		}
+		indexDescendants(type, entry, "");
+	}
+
+	private void indexDescendants(Type type, Entry parent, String typeParamPath) {
+		final List<Type> typeParams = type.getTypeParams();
+		for (int i = 0; i < typeParams.size(); i++) {
+			indexDescendants(typeParams.get(i), parent, typeParamPath + "<" + i + ">");
+		}
+		for (final TypeDefinition subDefinition : type.getSubDefinitions()) {
+			index(subDefinition, type, parent, typeParamPath);
+		}
+	}
+
+	private static void add(Map<String, Set<Entry>> index, String key, Entry entry) {
+		index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(entry);
+	}
+
+	private void unindex(Entry entry) {
+		final Type type = entry.definition.getType();
+		for (final String annotationName : type.getAnnotations().keySet()) {
+			remove(entriesByAnnotation, annotationName, entry);
+		}
+		remove(entriesByTypeName, type.getName(), entry);
+		for (final String modifier : entry.definition.getModifiers()) {
+			remove(entriesByModifier, modifier, entry);
+		}
+	}
+
+	private void removeDescendants(Type type) {
+		type.getTypeParams().forEach(this::removeDescendants);
+		type.getSubDefinitions().forEach(this::remove);
+	}
+
+	private static void remove(Map<String, Set<Entry>> index, String key, Entry entry) {
+		final Set<Entry> entries = index.get(key);
+		if (entries == null) return;
+		entries.remove(entry);
+		if (entries.isEmpty()) index.remove(key);
+	}
+}
@@ -44,7 +44,8 @@ public class ToodleToJsonConverter {
 
 	public JsonElement toJson(TypeAnnotation annotation) {
 		final JsonArray res = new JsonArray();
-		for (final Object o : annotation.getObjectParams()) {
+		for (int i = 0; i < annotation.getParamCount(); i++) {
+			final Object o = annotation.getObject(i);
 			if (o instanceof Number) {
 				res.add((Number) o);
 			} else if (o instanceof String) {
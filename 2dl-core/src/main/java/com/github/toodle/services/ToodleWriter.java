@@ -8,6 +8,8 @@ import com.github.toodle.model.AliasDefinition;
 import com.github.toodle.model.VarDefinition;
 import com.github.toodle.model.Type;
 import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeArena;
+import com.github.toodle.model.TypeCursor;
 import com.github.toodle.model.TypeDefinition;
 
 public class ToodleWriter {
@@ -22,6 +24,13 @@ public class ToodleWriter {
 		writeType_inner(rootType);
 	}
 
+	/**
+	 * Write an arena, with the same output as {@link #execute(Type)} on the model it was created from.
+	 */
+	public void execute(TypeArena arena) {
+		writeType_inner(arena.cursor());
+	}
+
 	private void write(String msg, Object... args) {
 		try {
 			writer.write(String.format(msg, args));
@@ -75,7 +84,7 @@ public class ToodleWriter {
 		for (final TypeAnnotation annotation : type.getAnnotations().values()) {
 			write(" ");
 			write(annotation.getName());
-			if (!annotation.getObjectParams().isEmpty()) {
+			if (annotation.getParamCount() > 0) {
 				final String params_str = annotation.getParamsAsLiterals().stream().collect(Collectors.joining(", "));
 				write("(" + params_str + ")");
 			}
@@ -102,4 +111,72 @@ public class ToodleWriter {
 		// write sub-definitions
 		type.getSubDefinitions().forEach(this::writeDefinition);
 	}
+
+	private void writeType(TypeCursor cursor) {
+		write(cursor.getTypeName());
+
+		// write annotations
+		for (int i = 0; i < cursor.getAnnotationCount(); i++) {
+			write(" ");
+			write(cursor.getAnnotationName(i));
+			final int paramCount = cursor.getParamCount(i);
+			if (paramCount > 0) {
+				write("(");
+				for (int j = 0; j < paramCount; j++) {
+					if (j > 0) write(", ");
+					write(cursor.getParam(i, j).toLiteral());
+				}
+				write(")");
+			}
+		}
+
+		if (hasChild(cursor, TypeArena.KIND_DEFINITION) || hasChild(cursor, TypeArena.KIND_ALIAS)) {
+			writeln("{");
+			indentLevel++;
+
+			writeType_inner(cursor);
+
+			indentLevel--;
+			writeln("}");
+		}
+	}
+
+	private void writeType_inner(TypeCursor cursor) {
+		//write alias definitions
+		writeChildren(cursor, TypeArena.KIND_ALIAS);
+
+		//write var definitions
+		for (int i = 0; i < cursor.getVarCount(); i++) {
+			writeIndent();
+			write("let %s = %s", cursor.getVarName(i), cursor.getVarValue(i).toLiteral());
+			writeln();
+		}
+
+		// write sub-definitions
+		writeChildren(cursor, TypeArena.KIND_DEFINITION);
+	}
+
+	/**
+	 * Write the aliases or sub-definitions of the node of the cursor, which is left on that node.
+	 */
+	private void writeChildren(TypeCursor cursor, int kind) {
+		if (!cursor.toFirstChild()) return;
+		do {
+			if (cursor.getKind() != kind) continue;
+			writeIndent();
+			write(kind == TypeArena.KIND_ALIAS ? "alias " + cursor.getName() + " = " : cursor.getName() + ": ");
+			writeType(cursor);
+			writeln();
+		} while (cursor.toNextSibling());
+		cursor.toParent();
+	}
+
+	private static boolean hasChild(TypeCursor cursor, int kind) {
+		final TypeCursor child = cursor.copy();
+		if (!child.toFirstChild()) return false;
+		do {
+			if (child.getKind() == kind) return true;
+		} while (child.toNextSibling());
+		return false;
+	}
 }
@@ -8,12 +8,25 @@ import com.github.toodle.model.Type;
 import com.github.toodle.model.TypeAnnotation;
 import com.github.toodle.model.TypeDefinition;
 
-public class ExpandAliases {
+public class ExpandAliases implements Transformer {
 
 	public void execute(Type rootType) {
 		expandAliases(rootType, rootType);
 	}
 
+	/**
+	 * Expand the aliases of {@code type} and its descendants, resolving names from {@code scope} and its ancestors.
+	 */
+	@Override
+	public void execute(Type type, Type scope) {
+		expandAliases(type, scope);
+	}
+
+	@Override
+	public boolean isIndependent() {
+		return true;
+	}
+
 	private void expandAliases(Type type, Type scope) {
 		// process the current type
 		Type alias = null;
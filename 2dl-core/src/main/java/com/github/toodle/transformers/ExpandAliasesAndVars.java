@@ -0,0 +1,241 @@
+package com.github.toodle.transformers;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.github.toodle.model.AliasDefinition;
+import com.github.toodle.model.Expr;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.model.VarDefinition;
+
+/**
+ * Expand aliases and vars in a single pass over the model, with the same result as {@link ExpandVars} followed by
+ * {@link ExpandAliases}.
+ * <p>
+ * Names are resolved against the nearest enclosing type that defines aliases (resp. vars), and the resolution of a
+ * name in such a scope, following alias (resp. var) chains, is computed once per call to
+ * {@link #execute(Type, Type)} or {@link #execute(List, Type)}. Cyclic chains are reported instead of looping forever.
+ * <p>
+ * Instances are stateless, and the pass is {@linkplain #isIndependent() independent}.
+ */
+public class ExpandAliasesAndVars implements Transformer {
+	private static final Resolution NO_ALIAS = new Resolution(null, null);
+
+	/**
+	 * The fully resolved name of an alias, and the annotations it adds to the types using it.
+	 */
+	private static class Resolution {
+		private final String name;
+		private final Map<String, TypeAnnotation> annotations;
+
+		public Resolution(String name, Map<String, TypeAnnotation> annotations) {
+			this.name = name;
+			this.annotations = annotations;
+		}
+	}
+
+	public void execute(Type rootType) {
+		execute(rootType, rootType);
+	}
+
+	/**
+	 * Expand the aliases and vars of {@code type} and its descendants, resolving names from {@code scope} and its
+	 * ancestors.
+	 */
+	@Override
+	public void execute(Type type, Type scope) {
+		final Type parent = type.getParent() == null ? type : type.getParent();
+		new Expansion().expand(type, getAliasScope(scope), getAliasScope(parent), getVarScope(scope),
+				getVarScope(parent));
+	}
+
+	/**
+	 * Expand several types, sharing the resolutions of names between them.
+	 */
+	@Override
+	public void execute(List<Type> types, Type scope) {
+		final Expansion expansion = new Expansion();
+		final Type aliasScope = getAliasScope(scope);
+		final Type varScope = getVarScope(scope);
+		for (final Type type : types) {
+			final Type parent = type.getParent() == null ? type : type.getParent();
+			expansion.expand(type, aliasScope, getAliasScope(parent), varScope, getVarScope(parent));
+		}
+	}
+
+	@Override
+	public boolean isIndependent() {
+		return true;
+	}
+
+	/**
+	 * The state of a call to {@link ExpandAliasesAndVars#execute(Type, Type)}.
+	 */
+	private static class Expansion {
+		// nearest type defining aliases or vars -> name -> resolution
+		private final Map<Type, Map<String, Resolution>> aliasResolutions = new IdentityHashMap<>();
+		private final Map<Type, Map<String, Expr>> varResolutions = new IdentityHashMap<>();
+		// names of the chain being resolved
+		private final Set<String> resolving = new LinkedHashSet<>();
+
+		/**
+		 * @param aliasScope The scope of the aliases used by {@code type}.
+		 * @param parentAliasScope The scope of the aliases of the parent of {@code type}.
+		 * @param varScope The scope of the vars used by the annotations of {@code type}.
+		 * @param parentVarScope The scope of the vars of the parent of {@code type}.
+		 */
+		private void expand(Type type, Type aliasScope, Type parentAliasScope, Type varScope, Type parentVarScope) {
+			// vars are expanded before alias annotations are added, as by ExpandVars followed by ExpandAliases
+			for (final TypeAnnotation ta : type.getAnnotations().values()) {
+				expandVars(ta, varScope);
+			}
+
+			final Resolution alias = resolveAlias(type.getName(), aliasScope);
+			if (alias != null) {
+				type.setName(alias.name);
+				for (final Entry<String, TypeAnnotation> e : alias.annotations.entrySet()) {
+					if (type.getAnnotation(e.getKey()) != null) continue;
+					type.getAnnotations().put(e.getKey(), e.getValue());
+				}
+			}
+
+			// as with ExpandAliases and ExpandVars, the descendants of type resolve names from type and its ancestors
+			final Type ownAliasScope = type.getAliasDefinitionMap().isEmpty() ? parentAliasScope : type;
+			final Type ownVarScope = type.getVarDefinitionMap().isEmpty() ? parentVarScope : type;
+
+			// recursively process type parameters
+			for (final Type typeParam : type.getTypeParams()) {
+				expand(typeParam, aliasScope, ownAliasScope, varScope, ownVarScope);
+			}
+
+			// recursively process sub-definitions
+			for (final TypeDefinition definition : type.getSubDefinitions()) {
+				expand(definition.getType(), ownAliasScope, ownAliasScope, ownVarScope, ownVarScope);
+			}
+		}
+
+		private void expandVars(TypeAnnotation typeAnnotation, Type scope) {
+			for (int i = 0; i < typeAnnotation.getParamCount(); i++) {
+				final Expr param = typeAnnotation.getExpr(i);
+				if (!param.isVar()) continue;
+				typeAnnotation.getExprParams_mutable().set(i, resolveVar(param, scope));
+			}
+		}
+
+		/**
+		 * Return the value of a var, following the chain of vars defined as other vars.
+		 */
+		private Expr resolveVar(Expr var, Type scope) {
+			final String varName = var.getAsVar().getName();
+			final Map<String, Expr> resolutions = varResolutions.computeIfAbsent(scope, s -> new HashMap<>());
+			Expr res = resolutions.get(varName);
+			if (res != null) return res;
+
+			final VarDefinition definition = getVar(varName, scope);
+			if (definition == null) {
+				throw new RuntimeException("Unknown constant: " + var.toLiteral());
+			}
+			res = definition.getValue();
+			if (res.isVar()) {
+				if (!resolving.add("$" + varName)) throw cycle("var", "$" + varName);
+				try {
+					res = resolveVar(res, scope);
+				} finally {
+					resolving.remove("$" + varName);
+				}
+			}
+			resolutions.put(varName, res);
+			return res;
+		}
+
+		/**
+		 * Return the resolution of an alias, following the chain of aliases defined as other aliases, or
+		 * {@code null} if {@code name} is not an alias.
+		 */
+		private Resolution resolveAlias(String name, Type scope) {
+			final Map<String, Resolution> resolutions = aliasResolutions.computeIfAbsent(scope, s -> new HashMap<>());
+			Resolution res = resolutions.get(name);
+			if (res != null) return res == NO_ALIAS ? null : res;
+
+			final AliasDefinition definition = getAlias(name, scope);
+			if (definition == null) {
+				res = NO_ALIAS;
+			} else {
+				final Type value = definition.getValue();
+				if (!resolving.add(name)) throw cycle("alias", name);
+				final Resolution next;
+				try {
+					next = resolveAlias(value.getName(), scope);
+				} finally {
+					resolving.remove(name);
+				}
+				final Map<String, TypeAnnotation> annotations = new LinkedHashMap<>(value.getAnnotations());
+				if (next == null) {
+					res = new Resolution(value.getName(), annotations);
+				} else {
+					next.annotations.forEach(annotations::putIfAbsent);
+					res = new Resolution(next.name, annotations);
+				}
+			}
+			resolutions.put(name, res);
+			return res == NO_ALIAS ? null : res;
+		}
+
+		private RuntimeException cycle(String kind, String name) {
+			return new RuntimeException(
+					String.format("Cyclic %s definition: %s -> %s", kind, String.join(" -> ", resolving), name));
+		}
+	}
+
+	/**
+	 * Return the alias with the specified name, or {@code null} if no such alias exists.
+	 */
+	private static AliasDefinition getAlias(String aliasName, Type scope) {
+		for (Type t = scope; t != null; t = t.getParent()) {
+			final AliasDefinition alias = t.getAliasDefinitionMap().get(aliasName);
+			if (alias != null) return alias;
+		}
+		return null;
+	}
+
+	/**
+	 * Return the var with the specified name, or {@code null} if no such var exists.
+	 */
+	private static VarDefinition getVar(String varName, Type scope) {
+		for (Type t = scope; t != null; t = t.getParent()) {
+			final VarDefinition var = t.getVarDefinitionMap().get(varName);
+			if (var != null) return var;
+		}
+		return null;
+	}
+
+	/**
+	 * Return the nearest type defining aliases among {@code type} and its ancestors, or the root type.
+	 */
+	private static Type getAliasScope(Type type) {
+		Type t = type;
+		while (t.getAliasDefinitionMap().isEmpty() && t.getParent() != null) {
+			t = t.getParent();
+		}
+		return t;
+	}
+
+	/**
+	 * Return the nearest type defining vars among {@code type} and its ancestors, or the root type.
+	 */
+	private static Type getVarScope(Type type) {
+		Type t = type;
+		while (t.getVarDefinitionMap().isEmpty() && t.getParent() != null) {
+			t = t.getParent();
+		}
+		return t;
+	}
+}
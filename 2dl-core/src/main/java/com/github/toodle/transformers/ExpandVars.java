@@ -8,11 +8,24 @@ import com.github.toodle.model.Type;
 import com.github.toodle.model.TypeAnnotation;
 import com.github.toodle.model.TypeDefinition;
 
-public class ExpandVars {
+public class ExpandVars implements Transformer {
 	public void execute(Type rootType) {
 		expandVars(rootType, rootType);
 	}
 
+	/**
+	 * Expand the vars of {@code type} and its descendants, resolving names from {@code scope} and its ancestors.
+	 */
+	@Override
+	public void execute(Type type, Type scope) {
+		expandVars(type, scope);
+	}
+
+	@Override
+	public boolean isIndependent() {
+		return true;
+	}
+
 	private void expandVars(Type type, Type scope) {
 		// process the current type
 		for (final TypeAnnotation ta : type.getAnnotations().values()) {
@@ -27,8 +40,8 @@ public class ExpandVars {
 	}
 
 	private void expandVars(TypeAnnotation typeAnnotation, Type scope) {
-		for (int i = 0; i < typeAnnotation.getExprParams().size(); i++) {
-			Expr param = typeAnnotation.getExprParams().get(i);
+		for (int i = 0; i < typeAnnotation.getParamCount(); i++) {
+			Expr param = typeAnnotation.getExpr(i);
 			while (param.isVar()) {
 				final Expr expanded = getVar(param.getAsVar().getName(), scope);
 				if (expanded == null) {
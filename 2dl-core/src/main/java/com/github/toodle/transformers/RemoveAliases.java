@@ -4,18 +4,26 @@ import com.github.toodle.model.Type;
 import com.github.toodle.services.SimpleToodleVisitor;
 import com.github.visitorj.VisitResult;
 
-public class RemoveAliases extends SimpleToodleVisitor {
+public class RemoveAliases extends SimpleToodleVisitor implements Transformer {
 	private static final RemoveAliasesVisitor visitor = new RemoveAliasesVisitor();
 
 	public void execute(Type rootType) {
 		rootType.accept(visitor);
 	}
 
+	/**
+	 * Remove the alias definitions of {@code type} and its descendants.
+	 */
+	@Override
+	public void execute(Type type, Type scope) {
+		type.accept(visitor);
+	}
+
 	private static class RemoveAliasesVisitor extends SimpleToodleVisitor {
 
 		@Override
 		public VisitResult visit(Type type, String identifier) {
-			type.getAliasDefinitions().clear();
+			type.removeAliasDefinitions();
 			return VisitResult.CONTINUE;
 		}
 	}
@@ -0,0 +1,158 @@
+package com.github.toodle.transformers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.toodle.model.AliasDefinition;
+import com.github.toodle.model.SourceLocation;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeDefinition;
+
+/**
+ * Replaces structurally {@linkplain Type#equals(Object) equal} types by a single frozen instance, and equal
+ * annotations by a single instance, e.g the types repeated by the expansion of aliases. Types with sub-definitions
+ * are only shared if their sub-definitions have the same locations.
+ * <p>
+ * The model must not be frozen, and is frozen by the pass, which should be the last one of a pipeline. The parent of
+ * a shared type is the container of its first occurrence.
+ */
+public class ShareIdenticalTypes implements Transformer {
+	// frozen types by structure and locations of their sub-definitions; equal types whose descendants have
+	// different locations are all kept
+	private final Map<Key, List<Type>> sharedTypes = new HashMap<>();
+	private final Map<TypeAnnotation, TypeAnnotation> sharedAnnotations = new HashMap<>();
+	private int typeCount;
+	private int distinctTypeCount;
+	private int annotationCount;
+	private int distinctAnnotationCount;
+
+	public void execute(Type rootType) {
+		execute(rootType, rootType);
+	}
+
+	/**
+	 * Share the descendants of {@code type}, and freeze it. The type itself is not replaced.
+	 */
+	@Override
+	public void execute(Type type, Type scope) {
+		typeCount = 0;
+		annotationCount = 0;
+		try {
+			shareDescendants(type);
+			type.freeze();
+			distinctTypeCount = sharedTypes.values().stream().mapToInt(List::size).sum();
+			distinctAnnotationCount = sharedAnnotations.size();
+		} finally {
+			sharedTypes.clear();
+			sharedAnnotations.clear();
+		}
+	}
+
+	/**
+	 * Return the number of types below the type of the last call to {@link #execute(Type, Type)}, including type
+	 * parameters and the values of aliases.
+	 */
+	public int getTypeCount() {
+		return typeCount;
+	}
+
+	/**
+	 * Return the number of distinct types left by the last call to {@link #execute(Type, Type)}.
+	 */
+	public int getDistinctTypeCount() {
+		return distinctTypeCount;
+	}
+
+	public int getAnnotationCount() {
+		return annotationCount;
+	}
+
+	public int getDistinctAnnotationCount() {
+		return distinctAnnotationCount;
+	}
+
+	private Type share(Type type) {
+		typeCount++;
+		shareDescendants(type);
+		// the type is frozen before it is hashed, so that its hash code is cached
+		type.freeze();
+		final List<Type> candidates = sharedTypes.computeIfAbsent(new Key(type), k -> new ArrayList<>(1));
+		for (final Type candidate : candidates) {
+			if (hasSameChildren(candidate, type)) return candidate;
+		}
+		candidates.add(type);
+		return type;
+	}
+
+	private void shareDescendants(Type type) {
+		for (final TypeAnnotation annotation : type.getAnnotations().values()) {
+			annotationCount++;
+			final TypeAnnotation shared = sharedAnnotations.putIfAbsent(annotation, annotation);
+			if (shared != null) type.getAnnotations().put(annotation.getName(), shared);
+		}
+		final List<Type> typeParams = type.getTypeParams();
+		for (int i = 0; i < typeParams.size(); i++) {
+			typeParams.set(i, share(typeParams.get(i)));
+		}
+		for (final TypeDefinition definition : type.getSubDefinitions()) {
+			final Type shared = share(definition.getType());
+			if (shared != definition.getType()) definition.setType(shared);
+		}
+		for (final AliasDefinition alias : new ArrayList<>(type.getAliasDefinitions())) {
+			final Type shared = share(alias.getValue());
+			if (shared != alias.getValue()) type.addAliasDefinition(alias.getName(), shared, alias.getLocation());
+		}
+	}
+
+	/**
+	 * Return whether two types with equal keys, whose children are already shared, have the same children.
+	 */
+	private static boolean hasSameChildren(Type a, Type b) {
+		for (int i = 0; i < a.getTypeParams().size(); i++) {
+			if (a.getTypeParams().get(i) != b.getTypeParams().get(i)) return false;
+		}
+		for (int i = 0; i < a.getSubDefinitions().size(); i++) {
+			if (a.getSubDefinitions().get(i).getType() != b.getSubDefinitions().get(i).getType()) return false;
+		}
+		for (final AliasDefinition alias : a.getAliasDefinitions()) {
+			if (alias.getValue() != b.getAliasDefinitionMap().get(alias.getName()).getValue()) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A frozen type and the locations of its sub-definitions.
+	 */
+	private static class Key {
+		private final Type type;
+		private final List<SourceLocation> locations;
+
+		public Key(Type type) {
+			this.type = type;
+			final List<TypeDefinition> definitions = type.getSubDefinitions();
+			if (definitions.isEmpty()) {
+				locations = Collections.emptyList();
+			} else {
+				final List<SourceLocation> res = new ArrayList<>(definitions.size());
+				definitions.forEach(d -> res.add(d.getLocation()));
+				locations = res;
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return type.equals(other.type) && locations.equals(other.locations);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * type.hashCode() + locations.hashCode();
+		}
+	}
+}
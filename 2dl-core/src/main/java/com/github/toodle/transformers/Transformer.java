@@ -0,0 +1,44 @@
+package com.github.toodle.transformers;
+
+import java.util.List;
+
+import com.github.toodle.model.Type;
+
+/**
+ * A pass over a model, run by a {@link TransformerPipeline}.
+ */
+public interface Transformer {
+	/**
+	 * Transform {@code type} and its descendants, resolving names from {@code scope} and its ancestors. The root type
+	 * is transformed with itself as scope.
+	 */
+	void execute(Type type, Type scope);
+
+	/**
+	 * Transform several types sharing the same scope, as {@link #execute(Type, Type)} would for each of them. Called
+	 * by the pipeline for batches of top-level definitions of independent passes, so that passes can share work
+	 * between the types of a batch.
+	 */
+	default void execute(List<Type> types, Type scope) {
+		for (final Type type : types) {
+			execute(type, scope);
+		}
+	}
+
+	/**
+	 * Return whether the pass may be run independently on each top-level definition, i.e. it only reads and modifies
+	 * the definition and reads the scopes of its ancestors. Independent passes are run concurrently on the types of
+	 * the top-level definitions, with the root type as scope, and are not run on the root type itself; they must be
+	 * thread-safe.
+	 */
+	default boolean isIndependent() {
+		return false;
+	}
+
+	/**
+	 * Return the name of the pass, used in the statistics of the pipeline.
+	 */
+	default String getName() {
+		return getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,202 @@
+package com.github.toodle.transformers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeDefinition;
+
+/**
+ * Runs a sequence of {@link Transformer} passes over a model, in the order they were added.
+ * <p>
+ * Passes that are {@linkplain Transformer#isIndependent() independent} are run on the top-level definitions in
+ * parallel, on a fork-join pool; the other passes are run on the root type. The wall time of each pass, and
+ * optionally the number of types it ran over, are recorded by the last call to {@link #execute(Type)}.
+ */
+public class TransformerPipeline {
+	// number of top-level definitions below which a range is not split
+	private static final int SPLIT_THRESHOLD = 64;
+	private final List<Transformer> passes = new ArrayList<>();
+	private final List<PassStatistics> statistics = new ArrayList<>();
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private boolean countTypes = false;
+
+	/**
+	 * Statistics of a pass.
+	 */
+	public static class PassStatistics {
+		private final String name;
+		private final long time;
+		private final int typeCount;
+
+		public PassStatistics(String name, long time, int typeCount) {
+			this.name = name;
+			this.time = time;
+			this.typeCount = typeCount;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Return the wall time of the pass, in nanoseconds.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Return the number of types the pass ran over, counted after the pass, including type parameters, or -1 if
+		 * types are not counted.
+		 */
+		public int getTypeCount() {
+			return typeCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d ms, %d types", name, time / 1_000_000, typeCount);
+		}
+	}
+
+	/**
+	 * Return a pipeline with the passes run by {@code ToodleReader}: {@link ExpandAliasesAndVars}.
+	 */
+	public static TransformerPipeline createDefault() {
+		return new TransformerPipeline().add(new ExpandAliasesAndVars());
+	}
+
+	public TransformerPipeline add(Transformer pass) {
+		passes.add(pass);
+		return this;
+	}
+
+	public List<Transformer> getPasses() {
+		return Collections.unmodifiableList(passes);
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Set the pool on which independent passes are run. Defaults to the common pool.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public boolean isCountTypes() {
+		return countTypes;
+	}
+
+	/**
+	 * Set whether the types each pass ran over are counted, which walks the model again after each pass. Defaults
+	 * to {@code false}.
+	 */
+	public void setCountTypes(boolean countTypes) {
+		this.countTypes = countTypes;
+	}
+
+	/**
+	 * Return the statistics of each pass run by the last call to {@link #execute(Type)}.
+	 */
+	public List<PassStatistics> getStatistics() {
+		return Collections.unmodifiableList(statistics);
+	}
+
+	public void execute(Type rootType) {
+		statistics.clear();
+		for (final Transformer pass : passes) {
+			final long start = System.nanoTime();
+			final int typeCount;
+			if (pass.isIndependent()) {
+				final List<TypeDefinition> definitions = rootType.getSubDefinitions();
+				if (definitions.size() > SPLIT_THRESHOLD && pool.getParallelism() > 1) {
+					typeCount = invoke(new DefinitionsTask(pass, rootType, definitions, 0, definitions.size()));
+				} else {
+					typeCount = execute(pass, rootType, definitions, 0, definitions.size());
+				}
+			} else {
+				pass.execute(rootType, rootType);
+				typeCount = countTypes ? countTypes(rootType) : -1;
+			}
+			statistics.add(new PassStatistics(pass.getName(), System.nanoTime() - start, typeCount));
+		}
+	}
+
+	private int invoke(DefinitionsTask task) {
+		try {
+			return pool.invoke(task);
+		} catch (final RuntimeException e) {
+			// exceptions thrown by another thread are rethrown as a copy, with the original exception as cause
+			if (e.getCause() != null && e.getCause().getClass() == e.getClass()) throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs an independent pass on a range of top-level definitions, split in sub-ranges run in parallel.
+	 */
+	private class DefinitionsTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		private final Transformer pass;
+		private final Type rootType;
+		private final List<TypeDefinition> definitions;
+		private final int from;
+		private final int to;
+
+		public DefinitionsTask(Transformer pass, Type rootType, List<TypeDefinition> definitions, int from, int to) {
+			this.pass = pass;
+			this.rootType = rootType;
+			this.definitions = definitions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (to - from > SPLIT_THRESHOLD) {
+				final int mid = (from + to) >>> 1;
+				final DefinitionsTask left = new DefinitionsTask(pass, rootType, definitions, from, mid);
+				left.fork();
+				final int right = new DefinitionsTask(pass, rootType, definitions, mid, to).compute();
+				final int leftCount = left.join();
+				return leftCount < 0 ? -1 : leftCount + right;
+			}
+			return execute(pass, rootType, definitions, from, to);
+		}
+	}
+
+	/**
+	 * Run an independent pass on a range of top-level definitions, and return the number of types it ran over, or -1.
+	 */
+	private int execute(Transformer pass, Type rootType, List<TypeDefinition> definitions, int from, int to) {
+		final List<Type> types = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			types.add(definitions.get(i).getType());
+		}
+		pass.execute(types, rootType);
+		if (!countTypes) return -1;
+		int res = 0;
+		for (final Type type : types) {
+			res += countTypes(type);
+		}
+		return res;
+	}
+
+	private static int countTypes(Type type) {
+		int res = 1;
+		for (final Type typeParam : type.getTypeParams()) {
+			res += countTypes(typeParam);
+		}
+		for (final TypeDefinition definition : type.getSubDefinitions()) {
+			res += countTypes(definition.getType());
+		}
+		return res;
+	}
+}
@@ -2,26 +2,163 @@ package com.github.toodle.validator;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.github.toodle.model.SourceLocation;
 import com.github.toodle.model.Type;
 import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeArena;
+import com.github.toodle.model.TypeCursor;
 import com.github.toodle.model.TypeDefinition;
 import com.github.toodle.model.TypeParamCollection;
 import com.github.toodle.services.ToodleVisitorWithContext;
 import com.github.visitorj.VisitResult;
 
+/**
+ * Validates models against a schema. The schema is compiled by the constructor into a table per type, with the
+ * annotations and modifiers inherited through {@code extends}, so that validating a type only performs lookups.
+ */
 public class ToodleSchema extends ToodleVisitorWithContext {
 	private final Map<String, Type> typeSchemas;
 	private final Type schemaForUnknownType;
 	private final Set<String> allowedGlobalModifiers;
+	private final Map<String, TypeSchema> compiledTypeSchemas;
+	private final TypeSchema compiledSchemaForUnknownType;
 	private final List<String> violations = new ArrayList<>();
 
+	/**
+	 * The compiled schema of a type.
+	 */
+	private static final class TypeSchema {
+		private final boolean abstract_;
+		private final Integer typeParamCount;
+		private final int minTypeParamCount;
+		private final int maxTypeParamCount;
+		private final boolean composite;
+		// the allowed types of sub-definitions, or empty if they are not restricted
+		private final List<String> allowedSubTypes;
+		private final String allowedSubTypesDescription;
+		private final Map<String, AnnotationSchema> allowedAnnotations;
+		private final String[] requiredAnnotations;
+		// the modifiers allowed on sub-definitions
+		private final Set<String> allowedModifiers;
+		// the names of the supertypes, following the extends chain
+		private final Set<String> supertypeNames;
+
+		public TypeSchema(ToodleSchema schema, Type typeSchema) {
+			abstract_ = typeSchema.getAnnotation("abstract") != null;
+
+			final TypeAnnotation typeParamCount_a = typeSchema.getAnnotation("typeParamCount");
+			final TypeAnnotation minTypeParamCount_a = typeSchema.getAnnotation("minTypeParamCount");
+			final TypeAnnotation maxTypeParamCount_a = typeSchema.getAnnotation("maxTypeParamCount");
+			typeParamCount = typeParamCount_a != null ? typeParamCount_a.getInt(0) : null;
+			// @formatter:off
+			minTypeParamCount =
+					minTypeParamCount_a != null
+					? minTypeParamCount_a.getInt(0)
+					: typeParamCount != null ? typeParamCount : 0;
+			maxTypeParamCount =
+					maxTypeParamCount_a != null
+					? (maxTypeParamCount_a.getInt(0) < 0 ? Integer.MAX_VALUE : maxTypeParamCount_a.getInt(0))
+					: typeParamCount != null ? typeParamCount : 0;
+			// @formatter:on
+
+			final TypeAnnotation composite_a = typeSchema.getAnnotation("composite");
+			composite = composite_a != null;
+			allowedSubTypes = composite ? Collections.unmodifiableList(composite_a.getStringParams())
+					: Collections.emptyList();
+			allowedSubTypesDescription = String.join(", ", allowedSubTypes);
+
+			final Map<String, AnnotationSchema> annotations = new HashMap<>();
+			final List<String> required = new ArrayList<>();
+			for (final TypeDefinition annotationDefinition : schema.getAllowedAnnotations(typeSchema).values()) {
+				annotations.put(annotationDefinition.getName(), AnnotationSchema.of(annotationDefinition.getType()));
+				if (annotationDefinition.getType().getAnnotation("required") != null) {
+					required.add(annotationDefinition.getName());
+				}
+			}
+			allowedAnnotations = Collections.unmodifiableMap(annotations);
+			requiredAnnotations = required.toArray(new String[0]);
+			allowedModifiers = Collections.unmodifiableSet(new HashSet<>(schema.getAllowedModifiers(typeSchema)));
+
+			final Set<String> supertypes = new LinkedHashSet<>();
+			String supertypeName = schema.getSupertypeName(typeSchema);
+			while (supertypeName != null && supertypes.add(supertypeName)) {
+				final Type supertype = schema.getSchema(supertypeName);
+				if (supertype == null) break;
+				supertypeName = schema.getSupertypeName(supertype);
+			}
+			supertypeNames = Collections.unmodifiableSet(supertypes);
+		}
+	}
+
+	/**
+	 * The compiled schema of an annotation.
+	 */
+	private static final class AnnotationSchema {
+		private final int minParamCount;
+		private final int maxParamCount;
+		// the type of each parameter, e.g int for variadic<int>
+		private final String paramTypeName;
+		private final Set<String> enumValues;
+		private final String enumValuesDescription;
+		// why the schema of the annotation is invalid, reported when the annotation is used; null if it is valid.
+		// Schemas validated against the meta-schema are valid
+		private final String schemaError;
+
+		private AnnotationSchema(int minParamCount, int maxParamCount, String paramTypeName, List<String> enumValues,
+				String schemaError) {
+			this.minParamCount = minParamCount;
+			this.maxParamCount = maxParamCount;
+			this.paramTypeName = paramTypeName;
+			this.enumValues = Collections.unmodifiableSet(new HashSet<>(enumValues));
+			this.enumValuesDescription = String.join(", ", enumValues);
+			this.schemaError = schemaError;
+		}
+
+		private static AnnotationSchema invalid(String schemaError) {
+			return new AnnotationSchema(0, 0, null, Collections.emptyList(), schemaError);
+		}
+
+		public static AnnotationSchema of(Type annotationSchema) {
+			if (annotationSchema.getTypeParams().isEmpty()) {
+				return invalid("the type of the parameters is not specified");
+			}
+			Type paramType = annotationSchema.getTypeParams().get(0);
+			final int minParamCount;
+			final int maxParamCount;
+			if (paramType.getName().equals("bool")) {
+				minParamCount = 0;
+				maxParamCount = 1;
+			} else if (paramType.getName().equals("variadic")) {
+				minParamCount = 0;
+				maxParamCount = Integer.MAX_VALUE;
+			} else {
+				minParamCount = 1;
+				maxParamCount = 1;
+			}
+			while (paramType.getName().equals("variadic")) {
+				if (paramType.getTypeParams().isEmpty()) return invalid("variadic has no type parameter");
+				paramType = paramType.getTypeParams().get(0);
+			}
+			final String paramTypeName = paramType.getName();
+			if (!paramTypeName.equals("enum")) {
+				return new AnnotationSchema(minParamCount, maxParamCount, paramTypeName, Collections.emptyList(),
+						null);
+			}
+			final TypeAnnotation of = paramType.getAnnotation("of");
+			if (of == null) return invalid("enum has no 'of' annotation");
+			return new AnnotationSchema(minParamCount, maxParamCount, paramTypeName, of.getStringParams(), null);
+		}
+	}
+
 	public ToodleSchema(Type schemaRootType) {
 		final Collection<TypeDefinition> schemaDefinitions = schemaRootType.getSubDefinitions();
 		this.typeSchemas = schemaDefinitions.stream().filter(d -> d.getType().getName().equals("type"))
@@ -29,6 +166,24 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 		this.allowedGlobalModifiers = schemaDefinitions.stream().filter(d -> d.getType().getName().equals("modifier"))
 				.map(d -> d.getName()).collect(Collectors.toSet());
 		schemaForUnknownType = this.typeSchemas.get("*");
+
+		final Map<String, TypeSchema> compiledTypeSchemas = new HashMap<>();
+		for (final Map.Entry<String, Type> e : typeSchemas.entrySet()) {
+			compiledTypeSchemas.put(e.getKey(), new TypeSchema(this, e.getValue()));
+		}
+		this.compiledTypeSchemas = Collections.unmodifiableMap(compiledTypeSchemas);
+		compiledSchemaForUnknownType = compiledTypeSchemas.get("*");
+	}
+
+	/**
+	 * Create a new validator sharing the compiled schema of {@code schema}, with no violations.
+	 */
+	public ToodleSchema(ToodleSchema schema) {
+		this.typeSchemas = schema.typeSchemas;
+		this.allowedGlobalModifiers = schema.allowedGlobalModifiers;
+		this.schemaForUnknownType = schema.schemaForUnknownType;
+		this.compiledTypeSchemas = schema.compiledTypeSchemas;
+		this.compiledSchemaForUnknownType = schema.compiledSchemaForUnknownType;
 	}
 
 	public boolean validate(Type rootType) {
@@ -37,6 +192,20 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 		return violations.isEmpty();
 	}
 
+	/**
+	 * Validate an arena. Top-level definitions are read from the arena and validated one at a time, so that only one
+	 * of them is on the heap as objects.
+	 */
+	public boolean validate(TypeArena arena) {
+		final TypeCursor cursor = arena.cursor();
+		final Type rootType = new Type(cursor.getTypeName(), null);
+		if (!cursor.toFirstChild()) return violations.isEmpty();
+		do {
+			if (cursor.getKind() == TypeArena.KIND_DEFINITION) cursor.toTypeDefinition(rootType).accept(this);
+		} while (cursor.toNextSibling());
+		return violations.isEmpty();
+	}
+
 	@Override
 	protected VisitResult onVisit(TypeAnnotation typeAnnotation, String identifier) {
 		return VisitResult.CONTINUE;
@@ -47,7 +216,7 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 		final String typeName = type.getName();
 		final TypeDefinition definition = context.getClosest(TypeDefinition.class);
 
-		final Type typeSchema = getSchema(typeName);
+		final TypeSchema typeSchema = getCompiledSchema(typeName);
 		if (typeSchema == null) {
 			error(definition, "Unknown type: %s", typeName);
 			return VisitResult.CONTINUE;
@@ -67,104 +236,88 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 		return typeSchema;
 	}
 
-	private void validateAbstractModifier(TypeDefinition definition, Type type, Type typeSchema) {
-		if (typeSchema.getAnnotation("abstract") != null) error(definition,
-				"cannot be defined of type '%s' because '%s' is abstract.", type.getName(), type.getName());
+	private TypeSchema getCompiledSchema(String typeName) {
+		final TypeSchema typeSchema = compiledTypeSchemas.get(typeName);
+		return typeSchema == null ? compiledSchemaForUnknownType : typeSchema;
 	}
 
-	private void validateTypeAnnotations(final TypeDefinition definition, Type type, Type typeSchema) {
-		final Map<String, TypeDefinition> allowedAnnotations = getAllowedAnnotations(typeSchema);
+	private void validateAbstractModifier(TypeDefinition definition, Type type, TypeSchema typeSchema) {
+		if (typeSchema.abstract_) error(definition, "cannot be defined of type '%s' because '%s' is abstract.",
+				type.getName(), type.getName());
+	}
+
+	private void validateTypeAnnotations(final TypeDefinition definition, Type type, TypeSchema typeSchema) {
 		// validate that all required type annotations are present
-		final List<String> requiredAnnotations = allowedAnnotations.values().stream()
-				.filter(d -> d.getType().getAnnotation("required") != null).map(TypeDefinition::getName)
-				.collect(Collectors.toList());
-		final Set<String> actualAnnotations = type.getAnnotations().keySet();
-		for (final String requiredAnnotation : requiredAnnotations) {
-			if (!actualAnnotations.contains(requiredAnnotation)) {
+		for (final String requiredAnnotation : typeSchema.requiredAnnotations) {
+			if (type.getAnnotation(requiredAnnotation) == null) {
 				error(definition, "a required annotation '%s' is missing", requiredAnnotation);
 			}
 		}
 
 		// validate type annotations
 		for (final TypeAnnotation annotation : type.getAnnotations().values()) {
-			final TypeDefinition annotationSchema_def = allowedAnnotations.get(annotation.getName());
+			final AnnotationSchema annotationSchema = typeSchema.allowedAnnotations.get(annotation.getName());
 			// validate that the annotation is allowed
-			if (annotationSchema_def == null) {
+			if (annotationSchema == null) {
 				error(definition, "the annotation '%s' is not allowed", annotation.getName());
 				continue;
 			}
-			final Type annotationSchema = annotationSchema_def.getType();
-			final Type annotationParametersType = annotationSchema.getTypeParams().get(0);
+			if (annotationSchema.schemaError != null) {
+				error(definition, "annotation %s: invalid schema: %s", annotation.getName(),
+						annotationSchema.schemaError);
+				continue;
+			}
 
 			// validate annotation parameters count
-			if (annotationParametersType.getName().equals("bool")) {
-				validateParamCount(definition, annotation, 0, 1);
-			} else if (!annotationParametersType.getName().equals("variadic")) {
-				validateParamCount(definition, annotation, 1);
+			if (annotationSchema.minParamCount == annotationSchema.maxParamCount) {
+				validateParamCount(definition, annotation, annotationSchema.minParamCount);
+			} else {
+				validateParamCount(definition, annotation, annotationSchema.minParamCount,
+						annotationSchema.maxParamCount);
 			}
 
 			// validate annotation parameters type
-			validateParamType(definition, annotation, annotationParametersType);
+			validateParamType(definition, annotation, annotationSchema);
 		}
 	}
 
-	private void validateTypeParamCount(final TypeDefinition definition, Type type, Type typeSchema) {
-		final TypeAnnotation typeParamCount_a = typeSchema.getAnnotation("typeParamCount");
-		final TypeAnnotation minTypeParamCount_a = typeSchema.getAnnotation("minTypeParamCount");
-		final TypeAnnotation maxTypeParamCount_a = typeSchema.getAnnotation("maxTypeParamCount");
-
-		final Integer typeParamCount = typeParamCount_a != null ? typeParamCount_a.getIntParams().get(0) : null;
-		// @formatter:off
-		final int minTypeParamCount =
-				minTypeParamCount_a != null
-				? minTypeParamCount_a.getIntParams().get(0)
-				: typeParamCount != null ? typeParamCount : 0;
-		final int maxTypeParamCount =
-				maxTypeParamCount_a != null
-				? (maxTypeParamCount_a.getIntParams().get(0) < 0 ? Integer.MAX_VALUE : maxTypeParamCount_a.getIntParams().get(0))
-				: typeParamCount != null ? typeParamCount : 0;
-		// @formatter:on
-
+	private void validateTypeParamCount(final TypeDefinition definition, Type type, TypeSchema typeSchema) {
+		final Integer typeParamCount = typeSchema.typeParamCount;
 		final int typeParamCount_actual = type.getTypeParams().size();
 		if (typeParamCount != null && typeParamCount != typeParamCount_actual) {
 			error(definition, "expected %s type parameters, got %s", typeParamCount, typeParamCount_actual);
 		}
-		if (typeParamCount_actual < minTypeParamCount) {
-			error(definition, "expected at least %s type parameters, got %s", minTypeParamCount,
+		if (typeParamCount_actual < typeSchema.minTypeParamCount) {
+			error(definition, "expected at least %s type parameters, got %s", typeSchema.minTypeParamCount,
 					typeParamCount_actual);
 		}
-		if (typeParamCount_actual > maxTypeParamCount) {
-			error(definition, "expected at most %s type parameters, got %s", maxTypeParamCount,
+		if (typeParamCount_actual > typeSchema.maxTypeParamCount) {
+			error(definition, "expected at most %s type parameters, got %s", typeSchema.maxTypeParamCount,
 					typeParamCount_actual);
 		}
 	}
 
-	private void validateCompositeAnnotation(final TypeDefinition definition, Type type, Type typeSchema) {
-		final TypeAnnotation composite_a = typeSchema.getAnnotation("composite");
-		final boolean composite = composite_a != null;
-
+	private void validateCompositeAnnotation(final TypeDefinition definition, Type type, TypeSchema typeSchema) {
 		// validate that !composite imply no sub-definitions
 		final boolean composite_actual = !type.getSubDefinitions().isEmpty();
-		if (!composite && composite_actual) {
+		if (!typeSchema.composite && composite_actual) {
 			error(definition, "no subdefinitions expected");
 		}
 
-		if (composite) {
-			// validate sub-definition allowed types
-			final List<String> allowedSubTypes = composite_a.getStringParams();
-			if (!allowedSubTypes.isEmpty()) {
-				for (final TypeDefinition d : type.getSubDefinitions()) {
-					if (!isSubstitute(d.getType().getName(), allowedSubTypes))
-						error(d, "type is %s, allowed types in this context are: %s", d.getType().getName(),
-								allowedSubTypes.stream().collect(Collectors.joining(", ")));
-				}
+		// validate sub-definition allowed types
+		if (typeSchema.composite && !typeSchema.allowedSubTypes.isEmpty()) {
+			for (final TypeDefinition d : type.getSubDefinitions()) {
+				if (!isSubstitute(d.getType().getName(), typeSchema.allowedSubTypes))
+					error(d, "type is %s, allowed types in this context are: %s", d.getType().getName(),
+							typeSchema.allowedSubTypesDescription);
 			}
 		}
 	}
 
 	private void error(TypeDefinition definition, String message, Object... args) {
-		violations.add("Line " + definition.getLocation().getLine() + ": " + definition.getName() + ": "
-				+ String.format(message, args));
+		final SourceLocation location = definition.getLocation();
+		final String where = location.getFileName().isEmpty() ? "Line " + location.getLine() : location.toString();
+		violations.add(where + ": " + definition.getName() + ": " + String.format(message, args));
 	}
 
 	/**
@@ -172,23 +325,24 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 	 */
 	public boolean isSubstitute(String typeName, String expectedTypeName) {
 		if (expectedTypeName.equals(typeName)) return true;
-		final Type typeSchema = getSchema(typeName);
-		if (typeSchema == null) return false;
-		final String typeSchema_parent = getSupertypeName(typeSchema);
-		return typeSchema_parent == null ? false : isSubstitute(typeSchema_parent, expectedTypeName);
+		final TypeSchema typeSchema = getCompiledSchema(typeName);
+		return typeSchema != null && typeSchema.supertypeNames.contains(expectedTypeName);
 	}
 
 	/**
 	 * Returns whether {@code typeName} is a valid substitute for any of the {@code expectedTypeNames}.
 	 */
 	public boolean isSubstitute(String typeName, Collection<String> expectedTypeNames) {
-		return expectedTypeNames.stream().anyMatch(et -> isSubstitute(typeName, et));
+		for (final String expectedTypeName : expectedTypeNames) {
+			if (isSubstitute(typeName, expectedTypeName)) return true;
+		}
+		return false;
 	}
 
 	public String getSupertypeName(Type typeSchema) {
 		final TypeAnnotation extends_a = typeSchema.getAnnotation("extends");
 		if (extends_a == null) return null;
-		final String supertypeName = extends_a.getStringParams().get(0);
+		final String supertypeName = extends_a.getString(0);
 		return supertypeName;
 	}
 
@@ -198,29 +352,37 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 		return supertype;
 	}
 
+	/**
+	 * Return the annotations allowed on a type, by name. The returned map may be unmodifiable. The result is computed
+	 * on each call; validation uses the tables compiled by the constructor.
+	 */
 	public Map<String, TypeDefinition> getAllowedAnnotations(Type typeSchema) {
-		final Map<String, TypeDefinition> res = new HashMap<>(typeSchema.getSubDefinitionsOfType("annotation"));
+		final Map<String, TypeDefinition> annotations = typeSchema.getSubDefinitionsOfType("annotation");
 		final String supertypeName = getSupertypeName(typeSchema);
 		final Type supertype = typeSchemas.get(supertypeName);
-		if (supertype != null) {
-			res.putAll(getAllowedAnnotations(supertype));
-		}
+		// without a supertype, the index of the schema is returned as is
+		if (supertype == null) return annotations;
+		final Map<String, TypeDefinition> res = new HashMap<>(annotations);
+		res.putAll(getAllowedAnnotations(supertype));
 		return res;
 	}
 
+	/**
+	 * Return the modifiers allowed on the sub-definitions of a type. The returned set may be unmodifiable.
+	 */
 	public Set<String> getAllowedModifiers(final Type parentSchema) {
 		if (parentSchema == null) return allowedGlobalModifiers;
-		final HashSet<String> res = new HashSet<>(parentSchema.getSubDefinitionsOfType("modifier").keySet());
+		final Set<String> modifiers = parentSchema.getSubDefinitionsOfType("modifier").keySet();
 		final String supertypeName = getSupertypeName(parentSchema);
 		final Type supertype = typeSchemas.get(supertypeName);
-		if (supertype != null) {
-			res.addAll(getAllowedModifiers(supertype));
-		}
+		if (supertype == null) return modifiers;
+		final HashSet<String> res = new HashSet<>(modifiers);
+		res.addAll(getAllowedModifiers(supertype));
 		return res;
 	}
 
 	private void validateParamCount(TypeDefinition definition, TypeAnnotation annotation, int expectedParamCount) {
-		final int paramCount = annotation.getObjectParams().size();
+		final int paramCount = annotation.getParamCount();
 		if (paramCount != expectedParamCount) {
 			error(definition, "annotation %s: expected %s parameters, got %s", annotation.getName(),
 					expectedParamCount, paramCount);
@@ -229,44 +391,56 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 
 	private void validateParamCount(TypeDefinition definition, TypeAnnotation annotation, int minParamCount,
 			int maxParamCount) {
-		final int paramCount = annotation.getObjectParams().size();
+		final int paramCount = annotation.getParamCount();
 		if (paramCount < minParamCount || paramCount > maxParamCount) {
 			error(definition, "annotation %s: expected between %s and %s parameters, got %s", annotation.getName(),
 					minParamCount, maxParamCount, paramCount);
 		}
 	}
 
-	private void validateParamType(TypeDefinition definition, TypeAnnotation annotation, Type expectedType) {
-		if (expectedType.getName().equals("primitive")) {
+	private void validateParamType(TypeDefinition definition, TypeAnnotation annotation,
+			AnnotationSchema annotationSchema) {
+		switch (annotationSchema.paramTypeName) {
+		case "primitive":
 			// no op
-		} else if (expectedType.getName().equals("bool")) {
-			final List<String> params = annotation.getStringParams();
+			break;
+		case "bool":
 			// if params is empty, we assume a 'true' value
-			for (final String param : params) {
+			for (int i = 0; i < annotation.getParamCount(); i++) {
+				final String param = annotation.getString(i);
 				if (!param.equals("true") && !param.equals("false")) {
-					error(definition, "%s, annotation %s: was expecting 'true' or 'false', got '%s'",
-							annotation.getName(), param);
+					error(definition, "annotation %s: was expecting 'true' or 'false', got '%s'", annotation.getName(),
+							param);
 				}
 			}
-		} else if (expectedType.getName().equals("string")) {
-			annotation.getStringParams();
-		} else if (expectedType.getName().equals("number")) {
-			annotation.getBigDecimalParams();
-		} else if (expectedType.getName().equals("int")) {
-			annotation.getIntParams();
-		} else if (expectedType.getName().equals("enum")) {
-			final Set<String> enumValues_allowed = new HashSet<>(expectedType.getAnnotation("of").getStringParams());
-			final List<String> enumValues_actual = annotation.getStringParams();
-			for (final String value : enumValues_actual) {
-				if (!enumValues_allowed.contains(value)) error(definition,
-						"%s, annotation %s: invalid enum value '%s'. Must be one of: %s", annotation.getName(), value,
-						enumValues_allowed.stream().collect(Collectors.joining(", ")));
+			break;
+		case "string":
+			// the accessors throw if a parameter cannot be converted
+			for (int i = 0; i < annotation.getParamCount(); i++) {
+				annotation.getString(i);
 			}
-		} else if (expectedType.getName().equals("variadic")) {
-			validateParamType(definition, annotation, expectedType.getTypeParams().get(0));
-		} else {
+			break;
+		case "number":
+			for (int i = 0; i < annotation.getParamCount(); i++) {
+				annotation.getBigDecimal(i);
+			}
+			break;
+		case "int":
+			for (int i = 0; i < annotation.getParamCount(); i++) {
+				annotation.getInt(i);
+			}
+			break;
+		case "enum":
+			for (int i = 0; i < annotation.getParamCount(); i++) {
+				final String value = annotation.getString(i);
+				if (!annotationSchema.enumValues.contains(value)) error(definition,
+						"annotation %s: invalid enum value '%s'. Must be one of: %s", annotation.getName(), value,
+						annotationSchema.enumValuesDescription);
+			}
+			break;
+		default:
 			error(definition, "annotation %s: invalid type for parameters: %s", annotation.getName(),
-					expectedType.getName());
+					annotationSchema.paramTypeName);
 		}
 	}
 
@@ -274,17 +448,16 @@ public class ToodleSchema extends ToodleVisitorWithContext {
 	protected VisitResult onVisit(TypeDefinition definition, String identifier) {
 		final Type parentType = context.getClosest(Type.class);
 		final Set<String> allowedModifiers;
-		Type parentSchema = null;
 		if (parentType == null) {
-			parentSchema = null;
+			allowedModifiers = allowedGlobalModifiers;
 		} else {
-			parentSchema = typeSchemas.get(parentType.getName());
+			final TypeSchema parentSchema = compiledTypeSchemas.get(parentType.getName());
 			if (parentSchema == null) {
 				error(definition, "Unknown type: %s", parentType.getName());
 				return VisitResult.SKIP_CHILDREN;
 			}
+			allowedModifiers = parentSchema.allowedModifiers;
 		}
-		allowedModifiers = getAllowedModifiers(parentSchema);
 		for (final String modifier : definition.getModifiers()) {
 			if (!allowedModifiers.contains(modifier)) error(definition, "Invalid modifier: %s", modifier);
 		}
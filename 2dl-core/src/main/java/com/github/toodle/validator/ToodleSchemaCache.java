@@ -0,0 +1,69 @@
+package com.github.toodle.validator;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide, bounded cache of compiled {@code ToodleSchema} instances, keyed by a hash of the schema content.
+ * <p>
+ * Cached instances are shared: use {@link ToodleSchema#ToodleSchema(ToodleSchema)} to obtain a validator for a
+ * cached schema. The least recently used schema is evicted when the cache is full.
+ */
+public class ToodleSchemaCache {
+	public static final int DEFAULT_MAX_SIZE = 64;
+	private static final ToodleSchemaCache instance = new ToodleSchemaCache(DEFAULT_MAX_SIZE);
+
+	private final Map<String, ToodleSchema> schemas;
+
+	public ToodleSchemaCache(int maxSize) {
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		this.schemas = new LinkedHashMap<String, ToodleSchema>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ToodleSchema> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public static ToodleSchemaCache get() {
+		return instance;
+	}
+
+	/**
+	 * Return the schema compiled from the content with the specified hash, or {@code null} if no such schema is
+	 * cached.
+	 */
+	public synchronized ToodleSchema get(String contentHash) {
+		return schemas.get(contentHash);
+	}
+
+	public synchronized void put(String contentHash, ToodleSchema schema) {
+		schemas.put(contentHash, schema);
+	}
+
+	public synchronized int size() {
+		return schemas.size();
+	}
+
+	public synchronized void clear() {
+		schemas.clear();
+	}
+
+	/**
+	 * Return the key under which a schema with the specified content is cached.
+	 */
+	public static String hash(String schemaContent) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return new BigInteger(1, digest.digest(schemaContent.getBytes(StandardCharsets.UTF_8))).toString(16);
+		} catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.github.toodle;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.github.toodle.ToodleReader.Backend;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeArena;
+import com.github.toodle.model.TypeDefinition;
+
+/**
+ * Measures the heap retained by the model read from generated definitions, in bytes per definition (including
+ * nested definitions), then the memory retained by a {@link TypeArena} of the same model, on and off the heap. Not
+ * run as part of the tests: run the {@code main} method with an optional number of top-level definitions, with a
+ * fixed heap size (e.g {@code -Xms1g -Xmx1g}) for stable results.
+ */
+public class ToodleModelMemoryBenchmark {
+	private static final int FIELD_COUNT = 20;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final int definitionCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final String text = generate(definitionCount);
+
+		final long before = getUsedMemory();
+		final ToodleReader reader = new ToodleReader(new StringReader(text));
+		reader.setBackend(Backend.RECURSIVE_DESCENT);
+		Type rootType = reader.read();
+		final long after = getUsedMemory();
+
+		final int totalDefinitionCount = countDefinitions(rootType);
+		System.out.println(String.format("%d definitions: retained=%d KB, %d bytes per definition",
+				totalDefinitionCount, (after - before) / 1024, (after - before) / totalDefinitionCount));
+
+		for (final boolean offHeap : new boolean[] { false, true }) {
+			final TypeArena arena = TypeArena.of(rootType, offHeap);
+			rootType = null;
+			// direct buffers are not counted in the heap
+			final long retained = getUsedMemory() - before + (offHeap ? arena.getColumnsByteSize() : 0);
+			System.out.println(String.format("arena (offHeap=%s): retained=%d KB, %d bytes per definition", offHeap,
+					retained / 1024, retained / totalDefinitionCount));
+			rootType = arena.toType();
+		}
+	}
+
+	private static long getUsedMemory() throws InterruptedException {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static int countDefinitions(Type type) {
+		int res = 0;
+		for (final TypeDefinition definition : type.getSubDefinitions()) {
+			res += 1 + countDefinitions(definition.getType());
+		}
+		return res;
+	}
+
+	/**
+	 * Generate object definitions whose fields are mostly leaf types, with zero to two annotations.
+	 */
+	private static String generate(int definitionCount) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < definitionCount; i++) {
+			sb.append("table").append(i).append(": object {\n");
+			for (int j = 0; j < FIELD_COUNT; j++) {
+				sb.append("\tfield").append(j).append(": ");
+				switch (j % 4) {
+				case 0:
+					sb.append("int\n");
+					break;
+				case 1:
+					sb.append("string nullable\n");
+					break;
+				case 2:
+					sb.append("number min(0) max(").append(j).append(")\n");
+					break;
+				default:
+					sb.append("array<string>\n");
+					break;
+				}
+			}
+			sb.append("}\n");
+		}
+		return sb.toString();
+	}
+}
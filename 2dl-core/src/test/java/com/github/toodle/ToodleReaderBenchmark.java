@@ -0,0 +1,95 @@
+package com.github.toodle;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import com.github.toodle.ToodleReader.Backend;
+
+/**
+ * Measures the time and memory allocated by {@link ToodleReader} on generated definitions, for each backend, and
+ * with and without parse tree building. Not run as part of the tests: run the {@code main} method with an optional
+ * number of definitions. The first configuration is measured as {@code cold} on its first read, so run it with the
+ * backend to measure first.
+ */
+public class ToodleReaderBenchmark {
+	private static final int WARMUP_ITERATIONS = 10;
+	private static final int ITERATIONS = 10;
+
+	private enum Configuration {
+		ANTLR_WITH_PARSE_TREE(Backend.ANTLR, true), ANTLR(Backend.ANTLR, false),
+		RECURSIVE_DESCENT(Backend.RECURSIVE_DESCENT, false);
+
+		private final Backend backend;
+		private final boolean buildParseTree;
+
+		private Configuration(Backend backend, boolean buildParseTree) {
+			this.backend = backend;
+			this.buildParseTree = buildParseTree;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		final int definitionCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final Configuration first = args.length > 1 ? Configuration.valueOf(args[1]) : Configuration.ANTLR;
+		final String text = generate(definitionCount);
+		System.out.println(String.format("%d definitions, %d characters", definitionCount, text.length()));
+
+		final long start = System.nanoTime();
+		read(text, first);
+		System.out.println(String.format("%s cold: time=%d ms", first, (System.nanoTime() - start) / 1_000_000));
+
+		for (final Configuration configuration : Configuration.values()) {
+			run(text, configuration, WARMUP_ITERATIONS);
+		}
+		for (final Configuration configuration : Configuration.values()) {
+			final long[] res = run(text, configuration, ITERATIONS);
+			System.out.println(String.format("%-21s time=%d ms allocated=%d KB", configuration, res[0] / 1_000_000,
+					res[1] / 1024));
+		}
+	}
+
+	/**
+	 * Return the best time in nanoseconds, and the average number of bytes allocated (-1 if not supported).
+	 */
+	private static long[] run(String text, Configuration configuration, int iterations) throws IOException {
+		long bestTime = Long.MAX_VALUE;
+		long totalAllocated = 0;
+		for (int i = 0; i < iterations; i++) {
+			final long allocatedBefore = getAllocatedBytes();
+			final long start = System.nanoTime();
+			read(text, configuration);
+			bestTime = Math.min(bestTime, System.nanoTime() - start);
+			totalAllocated += getAllocatedBytes() - allocatedBefore;
+		}
+		return new long[] { bestTime, getAllocatedBytes() < 0 ? -1 : totalAllocated / iterations };
+	}
+
+	private static void read(String text, Configuration configuration) throws IOException {
+		final ToodleReader reader = new ToodleReader(new StringReader(text));
+		reader.setBackend(configuration.backend);
+		reader.setBuildParseTree(configuration.buildParseTree);
+		reader.read();
+	}
+
+	private static long getAllocatedBytes() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static String generate(int definitionCount) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("alias nstring = string nullable\n\n");
+		for (int i = 0; i < definitionCount; i++) {
+			sb.append("table").append(i).append(": object {\n");
+			sb.append("\tname: string description(\"name of table ").append(i).append("\") min(1)\n");
+			sb.append("\tcomment: nstring\n");
+			sb.append("\tweights: array<number> default([1 2.5 3])\n");
+			sb.append("\tcolumns: array<column>\n");
+			sb.append("}\n\n");
+		}
+		return sb.toString();
+	}
+}
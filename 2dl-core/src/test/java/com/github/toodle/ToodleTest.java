@@ -6,24 +6,75 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.github.toodle.ToodleReader.Backend;
+import com.github.toodle.ToodleReader.ParseMode;
 import com.github.toodle.model.BuiltinCatalog;
 import com.github.toodle.model.DataType;
 import com.github.toodle.model.DataTypeDefinition;
 import com.github.toodle.model.DataTypeCatalog;
+import com.github.toodle.model.Expr;
+import com.github.toodle.model.ImmutableType;
+import com.github.toodle.model.ImmutableTypeAnnotation;
+import com.github.toodle.model.PersistentList;
+import com.github.toodle.model.Type;
+import com.github.toodle.model.TypeAnnotation;
+import com.github.toodle.model.TypeArena;
+import com.github.toodle.model.TypeCursor;
 import com.github.toodle.model.TypeDefinition;
+import com.github.toodle.parser.StringLiterals;
+import com.github.toodle.parser.ToodleSyntaxException;
+import com.github.toodle.query.Selector;
+import com.github.toodle.query.SelectorMatcher;
+import com.github.toodle.services.ToodleBinaryModel;
+import com.github.toodle.services.ToodleBinaryWriter;
+import com.github.toodle.services.ToodleDiff;
+import com.github.toodle.services.ToodleDiff.Change;
+import com.github.toodle.services.ToodleIndex;
 import com.github.toodle.services.ToodleToJsonConverter;
+import com.github.toodle.services.ToodleWriter;
+import com.github.toodle.transformers.ExpandAliases;
+import com.github.toodle.transformers.ExpandAliasesAndVars;
+import com.github.toodle.transformers.ExpandVars;
+import com.github.toodle.transformers.RemoveAliases;
+import com.github.toodle.transformers.ShareIdenticalTypes;
+import com.github.toodle.transformers.Transformer;
+import com.github.toodle.transformers.TransformerPipeline;
+import com.github.toodle.transformers.TransformerPipeline.PassStatistics;
+import com.github.toodle.validator.ToodleSchema;
+import com.github.toodle.validator.ToodleSchemaCache;
+import com.github.toodle.validator.ToodleValidationException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -34,6 +85,9 @@ public class ToodleTest {
 	private static final File ref = getResourceFile("ToodleTest-ref.txt");
 	private final Gson gson;
 
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	public ToodleTest() throws IOException {
 		gson = new GsonBuilder().setPrettyPrinting().create();
 	}
@@ -65,6 +119,479 @@ public class ToodleTest {
 		}
 	}
 
+	@Test
+	public void testSchemaCache() throws Exception {
+		final ToodleSchemaCache cache = ToodleSchemaCache.get();
+		cache.clear();
+		final String contentHash = ToodleSchemaCache
+				.hash(new String(Files.readAllBytes(getResourceFile("schema.2dl").toPath()), "UTF-8"));
+		ToodleSchema cached = null;
+		for (int i = 0; i < 2; i++) {
+			try (final Reader definitionsReader = new BufferedReader(new FileReader(getResourceFile("database.2dl")));
+					Reader schemaReader = new BufferedReader(new FileReader(getResourceFile("schema.2dl")))) {
+				new ToodleReader(definitionsReader, schemaReader).read();
+			}
+			assertEquals(1, cache.size());
+			// the second read uses the schema compiled by the first one, rather than compiling and caching a new one
+			if (i == 0) cached = cache.get(contentHash);
+			assertNotNull(cached);
+			assertSame(cached, cache.get(contentHash));
+		}
+	}
+
+	@Test
+	public void testTwoStageParsing() throws Exception {
+		try (final Reader definitionsReader = new BufferedReader(new FileReader(getResourceFile("database.2dl")))) {
+			final ToodleReader toodleReader = new ToodleReader(definitionsReader);
+			toodleReader.setParseMode(ParseMode.SLL_THEN_LL);
+			final Collection<TypeDefinition> definitions = toodleReader.read().getSubDefinitions();
+			assertEquals(PredictionMode.SLL, toodleReader.getPredictionModeUsed());
+			assertEquals(gson.toJson(readJson("database.2dl")),
+					gson.toJson(new ToodleToJsonConverter().toJson(definitions)));
+		}
+
+		final ToodleReader toodleReader = new ToodleReader(new StringReader("a: int\nb: : int\n"));
+		toodleReader.setParseMode(ParseMode.SLL_THEN_LL);
+		toodleReader.read();
+		assertEquals(PredictionMode.LL, toodleReader.getPredictionModeUsed());
+	}
+
+	@Test
+	public void testTreeLessParsing() throws Exception {
+		final String text = "let $v = [1 [a \"b\"]]\na: int range(-1.5, 10) values([1 2], $v) {\n\tb: string\n}\n";
+		final String[] json = new String[2];
+		for (int i = 0; i < 2; i++) {
+			final ToodleReader toodleReader = new ToodleReader(new StringReader(text));
+			toodleReader.setBuildParseTree(i == 0);
+			final Type rootType = toodleReader.read();
+			assertEquals("[[1 2], [1 [\"a\" \"b\"]]]",
+					rootType.getSubDefinition("a").getType().getAnnotation("values").getExprParams().toString());
+			json[i] = gson.toJson(new ToodleToJsonConverter().toJson(rootType.getSubDefinitions()));
+		}
+		assertEquals(json[0], json[1]);
+	}
+
+	@Test
+	public void testRecursiveDescentBackend() throws Exception {
+		final List<String> texts = new ArrayList<>();
+		for (final String resourceName : new String[] { "database.2dl", "schema.2dl", "2dl-schema.2dl" }) {
+			texts.add(IOUtils.toString(ToodleTest.class.getClassLoader().getResource(resourceName), "UTF-8"));
+		}
+		texts.add("/* comment\r\n */ alias aliases = string min(0)\r\n\r\n"
+				+ "let $list = [1 \r\n -2.5e3 0123 \"a\\tb\" [x]]\n"
+				+ "a: map<string, object { public final b: aliases } > \\\n\n"
+				+ " x(\"\"\"\n\t|y\n\"\"\", $list) // comment\n"
+				+ "c\nd: int { let $v = 1e2\n e: int x($v) }");
+		for (final String text : texts) {
+			final String[] res = new String[2];
+			for (final Backend backend : Backend.values()) {
+				final Type rootType = ToodleReader.parse(text, "", backend, ParseMode.LL);
+				final StringWriter writer = new StringWriter();
+				new ToodleWriter(writer).execute(rootType);
+				ToodleReader.expand(rootType);
+				res[backend.ordinal()] = writer
+						+ gson.toJson(new ToodleToJsonConverter().toJson(rootType.getSubDefinitions()))
+						+ getLocations(rootType);
+			}
+			assertEquals(res[0], res[1]);
+		}
+
+		final ToodleReader toodleReader = new ToodleReader(new StringReader("a: int\nb: : int\n"));
+		toodleReader.setBackend(Backend.RECURSIVE_DESCENT);
+		try {
+			toodleReader.read();
+			fail();
+		} catch (final ToodleSyntaxException e) {
+			assertEquals(2, e.getLine());
+			assertEquals(3, e.getColumn());
+		}
+	}
+
+	@Test
+	public void testStringLiterals() {
+		assertEquals("a\tb\\x\"", StringLiterals.decode("\"a\\tb\\x\\\"\""));
+		assertEquals("A\u00e9", StringLiterals.decode("\"\\u0041\\351\""));
+		assertEquals("x\n  y\n", StringLiterals.decode("\"\"\"\n\t|x\n  |  y\n\t|\n\"\"\""));
+		final Expr expr = StringLiterals.toExpr("\"a\\n\"");
+		assertTrue(expr.isString());
+		assertEquals("a\n", expr.getAsString());
+	}
+
+	@Test
+	public void testPackedArrays() throws Exception {
+		final String text = "let $codes = [1 -2 30]\n"
+				+ "a: int values($codes, [1.5 2.5], [x \"y\"], [1 2.5])\nb: int values($codes)\n";
+		for (final Backend backend : Backend.values()) {
+			final ToodleReader toodleReader = new ToodleReader(new StringReader(text));
+			toodleReader.setBackend(backend);
+			final Type rootType = toodleReader.read();
+			final List<Expr> a = rootType.getSubDefinition("a").getType().getAnnotation("values").getExprParams();
+			final List<Expr> b = rootType.getSubDefinition("b").getType().getAnnotation("values").getExprParams();
+			assertEquals("[[1 -2 30], [1.5 2.5], [\"x\" \"y\"], [1 2.5]]", a.toString());
+			assertSame(a.get(0), b.get(0));
+			assertEquals(-2, a.get(0).getAsList().get(1).getAsInt());
+		}
+	}
+
+	@Test
+	public void testFusedExpansion() throws Exception {
+		final List<String> texts = new ArrayList<>();
+		for (final String resourceName : new String[] { "database.2dl", "schema.2dl", "2dl-schema.2dl" }) {
+			texts.add(IOUtils.toString(ToodleTest.class.getClassLoader().getResource(resourceName), "UTF-8"));
+		}
+		texts.add("alias a = b min(1)\nalias c = int max(2)\nlet $x = $y\nlet $y = 3\n"
+				+ "t: map<a, object { alias b = c nullable\n let $y = 4\n u: a x($x)\n v: map<a, c> } > x($x) {\n"
+				+ " alias b = string\n w: a min(0) x($x)\n s: object { let $x = 5\n z: array<a> x($x) } }");
+		for (final String text : texts) {
+			final String[] res = new String[2];
+			for (int i = 0; i < 2; i++) {
+				final Type rootType = ToodleReader.parse(text, "", Backend.RECURSIVE_DESCENT, ParseMode.LL);
+				if (i == 0) {
+					new ExpandVars().execute(rootType);
+					new ExpandAliases().execute(rootType);
+				} else {
+					new ExpandAliasesAndVars().execute(rootType);
+				}
+				final StringWriter writer = new StringWriter();
+				new ToodleWriter(writer).execute(rootType);
+				res[i] = writer + gson.toJson(new ToodleToJsonConverter().toJson(rootType.getSubDefinitions()));
+			}
+			assertEquals(res[0], res[1]);
+		}
+
+		final ToodleReader toodleReader = new ToodleReader(new StringReader("alias a = b\nalias b = a\nc: a\n"));
+		try {
+			toodleReader.read();
+			fail();
+		} catch (final RuntimeException e) {
+			assertEquals("Cyclic alias definition: a -> b -> a", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testTransformerPipeline() throws Exception {
+		final StringBuilder sb = new StringBuilder("alias id = int min(0)\n");
+		for (int i = 0; i < 200; i++) {
+			sb.append("t").append(i).append(": object { id: id\n tags: array<string> }\n");
+		}
+		final TransformerPipeline pipeline = TransformerPipeline.createDefault().add(new Transformer() {
+			@Override
+			public void execute(Type type, Type scope) {
+				type.getSubDefinitions().forEach(d -> d.getModifiers().add("checked"));
+			}
+
+			@Override
+			public boolean isIndependent() {
+				return true;
+			}
+
+			@Override
+			public String getName() {
+				return "Check";
+			}
+		}).add(new RemoveAliases());
+		pipeline.setCountTypes(true);
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		pipeline.setPool(pool);
+		final ToodleReader toodleReader = new ToodleReader(new StringReader(sb.toString()));
+		toodleReader.setTransformerPipeline(pipeline);
+		final Type rootType;
+		try {
+			rootType = toodleReader.read();
+		} finally {
+			pool.shutdown();
+		}
+
+		assertTrue(rootType.getAliasDefinitions().isEmpty());
+		final TypeDefinition id = rootType.getSubDefinition("t199").getType().getSubDefinition("id");
+		assertEquals("int", id.getType().getName());
+		assertTrue(id.getModifiers().contains("checked"));
+		assertEquals(Arrays.asList("ExpandAliasesAndVars", "Check", "RemoveAliases"),
+				pipeline.getStatistics().stream().map(PassStatistics::getName).collect(Collectors.toList()));
+		assertEquals(800, pipeline.getStatistics().get(1).getTypeCount());
+		assertEquals(801, pipeline.getStatistics().get(2).getTypeCount());
+	}
+
+	@Test
+	public void testImmutableModel() throws Exception {
+		final Type rootType = readDatabase();
+		final ImmutableType v1 = ImmutableType.of(rootType);
+		final ToodleToJsonConverter converter = new ToodleToJsonConverter();
+		assertEquals(gson.toJson(converter.toJson(rootType.getSubDefinitions())),
+				gson.toJson(converter.toJson(v1.toType().getSubDefinitions())));
+
+		// path-copying update: the other definitions are shared, and the previous version is unchanged
+		final ImmutableType v2 = v1.update(Arrays.asList("table", "name"),
+				t -> t.withAnnotation(new ImmutableTypeAnnotation("nullable", Collections.emptyList())));
+		assertNotNull(v2.getSubDefinition("table").getType().getSubDefinition("name").getType()
+				.getAnnotation("nullable"));
+		assertNull(v1.getSubDefinition("table").getType().getSubDefinition("name").getType()
+				.getAnnotation("nullable"));
+		assertSame(v1.getSubDefinition("column"), v2.getSubDefinition("column"));
+		assertSame(v1.getSubDefinition("table").getType().getSubDefinition("type"),
+				v2.getSubDefinition("table").getType().getSubDefinition("type"));
+
+		// a transformation that changes nothing returns the same version
+		assertSame(v2, v2.transform(t -> t));
+		final ImmutableType v3 = v2.transform(t -> t.getName().equals("int") ? t.withName("long") : t);
+		assertEquals("long", v3.getSubDefinition("column").getType().getSubDefinition("size").getType().getName());
+		assertSame(v2.getSubDefinition("database"), v3.getSubDefinition("database"));
+
+		PersistentList<Integer> list = PersistentList.empty();
+		for (int i = 0; i < 2000; i++) {
+			list = list.plus(i);
+		}
+		final PersistentList<Integer> modified = list.with(1500, -1).minus(0);
+		assertEquals(PersistentList.of(new ArrayList<>(list)), list);
+		assertEquals(1999, modified.size());
+		assertEquals(-1, (int) modified.get(1499));
+		assertEquals(1500, (int) list.get(1500));
+
+		// removing the last elements, across a change of depth, then appending again
+		PersistentList<Integer> shrunk = list;
+		for (int i = 1999; i >= 1000; i--) {
+			shrunk = shrunk.minus(i);
+		}
+		assertEquals(new ArrayList<>(list.subList(0, 1000)), shrunk);
+		assertEquals(2000, list.size());
+		for (int i = 1000; i < 1100; i++) {
+			shrunk = shrunk.plus(i);
+		}
+		assertEquals(new ArrayList<>(list.subList(0, 1100)), shrunk);
+		assertTrue(PersistentList.of(Arrays.asList(1)).minus(0).isEmpty());
+	}
+
+	@Test
+	public void testSubDefinitionIndex() throws Exception {
+		final Type rootType = new ToodleReader(new StringReader("alias id = int\na: id\nb: string\nc: id\n")).read();
+		final List<TypeDefinition> definitions = rootType.getSubDefinitions();
+		assertSame(definitions.get(1), rootType.getSubDefinition("b"));
+		assertEquals(Arrays.asList("a", "c"), new ArrayList<>(rootType.getSubDefinitionsOfType("int").keySet()));
+
+		// appended definitions are indexed, other modifications and renames are taken into account
+		definitions.add(new TypeDefinition("d", Collections.emptyList(), new Type("int", rootType)));
+		assertEquals(Arrays.asList("a", "c", "d"), new ArrayList<>(rootType.getSubDefinitionsOfType("int").keySet()));
+		definitions.get(0).getType().setName("long");
+		definitions.remove(1);
+		assertEquals(Arrays.asList("c", "d"), new ArrayList<>(rootType.getSubDefinitionsOfType("int").keySet()));
+		assertNull(rootType.getSubDefinition("b"));
+		definitions.get(0).setName("e");
+		assertNull(rootType.getSubDefinition("a"));
+		assertSame(definitions.get(0), rootType.getSubDefinition("e"));
+		assertTrue(rootType.getSubDefinitionsOfType("bool").isEmpty());
+	}
+
+	@Test
+	public void testAliasAndVarMaps() {
+		final Type type = new Type("object", null);
+		final List<Map<String, ?>> maps = new ArrayList<>();
+		maps.add(type.getAliasDefinitionMap());
+		maps.add(type.getVarDefinitionMap());
+		type.addAliasDefinition("id", new Type("int", type));
+		type.addVarDefinition("x", new Expr("1"));
+		maps.add(type.getAliasDefinitionMap());
+		maps.add(type.getVarDefinitionMap());
+		for (final Map<String, ?> map : maps) {
+			try {
+				map.put("y", null);
+				fail();
+			} catch (final UnsupportedOperationException e) {
+				// expected
+			}
+		}
+		assertEquals("int", type.getAliasDefinitionMap().get("id").getValue().getName());
+		assertEquals(1, type.getVarDefinitionMap().size());
+	}
+
+	@Test
+	public void testSymbolInterning() throws Exception {
+		final String text = "a: string nullable\nb: string nullable\n";
+		for (final Backend backend : Backend.values()) {
+			final ToodleReader toodleReader = new ToodleReader(new StringReader(text));
+			toodleReader.setBackend(backend);
+			final Type rootType = toodleReader.read();
+			final Type a = rootType.getSubDefinition("a").getType();
+			final Type b = rootType.getSubDefinition("b").getType();
+			assertSame(a.getName(), b.getName());
+			assertSame(a.getAnnotation("nullable").getName(), b.getAnnotation("nullable").getName());
+		}
+	}
+
+	private static String getLocations(Type type) {
+		return type.getSubDefinitions().stream()
+				.map(d -> d.getName() + "@" + d.getLocation().getLine() + getLocations(d.getType()))
+				.collect(Collectors.joining(",", "[", "]"));
+	}
+
+	@Test
+	public void testBinaryModel() throws Exception {
+		final Type rootType = readDatabase();
+		final File file = temporaryFolder.newFile("database.2dlb");
+		try (final OutputStream out = new FileOutputStream(file)) {
+			new ToodleBinaryWriter(out).execute(rootType);
+		}
+
+		final ToodleBinaryModel model = ToodleBinaryModel.open(file.toPath());
+		assertEquals(3, model.getDefinitionCount());
+		final TypeDefinition table = model.getDefinition("table");
+		assertEquals(10, table.getLocation().getLine());
+		assertEquals("string", table.getType().getSubDefinition("name").getType().getName());
+		assertNull(model.getDefinition("tables"));
+		try {
+			model.getDefinition(null);
+			fail();
+		} catch (final NullPointerException e) {
+			assertEquals("The definition name must not be null", e.getMessage());
+		}
+		assertSame(table, model.getDefinition(1));
+
+		final StringWriter expected = new StringWriter();
+		new ToodleWriter(expected).execute(rootType);
+		final StringWriter actual = new StringWriter();
+		new ToodleWriter(actual).execute(model.getRootType());
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(gson.toJson(new ToodleToJsonConverter().toJson(rootType.getSubDefinitions())),
+				gson.toJson(new ToodleToJsonConverter().toJson(model.getRootType().getSubDefinitions())));
+
+		// var names are symbols, like the other names
+		final Type scopes = new Type("", null);
+		final Type a = new Type("object", scopes);
+		scopes.addVarDefinition(new String("x"), new Expr("1"));
+		a.addVarDefinition(new String("x"), new Expr("2"));
+		scopes.getSubDefinitions().add(new TypeDefinition("a", Collections.emptyList(), a));
+		final File scopesFile = temporaryFolder.newFile("scopes.2dlb");
+		try (final OutputStream out = new FileOutputStream(scopesFile)) {
+			new ToodleBinaryWriter(out).execute(scopes);
+		}
+		final ToodleBinaryModel scopesModel = ToodleBinaryModel.open(scopesFile.toPath());
+		assertSame(scopesModel.getRootType().getVarDefinitions().iterator().next().getName(),
+				scopesModel.getDefinition("a").getType().getVarDefinitions().iterator().next().getName());
+	}
+
+	@Test
+	public void testStreamReader() throws Exception {
+		try (final ToodleStreamReader streamReader = new ToodleStreamReader(
+				new BufferedReader(new FileReader(getResourceFile("database.2dl"))))) {
+			final List<TypeDefinition> definitions = streamReader.stream().collect(Collectors.toList());
+			assertEquals(gson.toJson(readJson("database.2dl")),
+					gson.toJson(new ToodleToJsonConverter().toJson(definitions)));
+		}
+	}
+
+	@Test
+	public void testProjectReader() throws Exception {
+		final List<String> lines = Files.readAllLines(getResourceFile("database.2dl").toPath());
+		final Path directory = temporaryFolder.newFolder().toPath();
+		final Path file1 = directory.resolve("1.2dl");
+		final Path file2 = directory.resolve("sub").resolve("2.2dl");
+		Files.createDirectories(file2.getParent());
+		Files.write(file1, lines.subList(0, 9));
+		Files.write(file2, lines.subList(9, lines.size()));
+
+		final Type rootType = new ToodleProjectReader(ToodleProjectReader.findFiles(directory)).read();
+		assertEquals(gson.toJson(readJson("database.2dl")),
+				gson.toJson(new ToodleToJsonConverter().toJson(rootType.getSubDefinitions())));
+		assertEquals(file2.toString(), rootType.getSubDefinition("table").getLocation().getFileName());
+		assertEquals(1, rootType.getSubDefinition("table").getLocation().getLine());
+
+		// an alias and a var defined in two files
+		final Path file3 = directory.resolve("3.2dl");
+		Files.write(file3, Arrays.asList("", "alias nstring = int", "let $todo = \"x\""));
+		for (final Backend backend : Backend.values()) {
+			final ToodleProjectReader projectReader = new ToodleProjectReader(
+					ToodleProjectReader.findFiles(directory));
+			projectReader.setBackend(backend);
+			try {
+				projectReader.read();
+				fail();
+			} catch (final ToodleValidationException e) {
+				assertEquals(Arrays.asList("alias nstring is defined at " + file1 + ":6 and " + file3 + ":2",
+						"var $todo is defined at " + file1 + ":8 and " + file3 + ":3"), e.getViolations());
+			}
+		}
+
+		// the error reading a file is rethrown, and the tasks of the other files are cancelled
+		try {
+			new ToodleProjectReader(Arrays.asList(directory.resolve("missing.2dl"), file1, file2)).read();
+			fail();
+		} catch (final NoSuchFileException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDocumentEdit() throws Exception {
+		final ToodleDocument document = new ToodleDocument(
+				new String(Files.readAllBytes(getResourceFile("database.2dl").toPath()), "UTF-8"));
+
+		// edit a definition: the indexes of the root type are kept
+		final Type rootType = document.getRootType();
+		assertNotNull(rootType.getSubDefinitionsOfType("object").get("column"));
+		assertNotNull(rootType.getSubDefinition("column"));
+		final int start = document.getText().indexOf("typeCode: int") + "typeCode: ".length();
+		assertTrue(document.edit(start, start + "int".length(), "long min(0)\n\tscale: int"));
+		assertTrue(hasSubDefinitionIndexes(rootType));
+		final TypeDefinition column = rootType.getSubDefinition("column");
+		assertSame(column, rootType.getSubDefinitionsOfType("object").get("column"));
+		assertNotNull(column.getType().getSubDefinition("scale"));
+		assertDocumentEquals(document);
+		assertEquals(21, document.getRootType().getSubDefinition("column").getType().getSubDefinition("nullable")
+				.getLocation().getLine());
+
+		// insert a definition before the others
+		assertTrue(document.edit(0, 0, "first: string\n\n"));
+		assertDocumentEquals(document);
+		assertEquals("first", document.getRootType().getSubDefinitions().get(0).getName());
+		assertEquals(12, document.getRootType().getSubDefinition("table").getLocation().getLine());
+		assertEquals(13, document.getRootType().getSubDefinition("table").getType().getSubDefinition("name")
+				.getLocation().getLine());
+
+		// edit an alias
+		final int aliasStart = document.getText().indexOf("nullable");
+		assertFalse(document.edit(aliasStart, aliasStart + "nullable".length(), "description(\"n\")"));
+		assertDocumentEquals(document);
+
+		// several edits, moving back and forth, before the model is read
+		final int tableStart = document.getText().indexOf("table: object");
+		assertTrue(document.edit(tableStart, tableStart, "t1: int\n\nt2: object {\n\tx: int\n}\n\n"));
+		assertTrue(document.edit(0, 0, "\n\n"));
+		final int columnStart = document.getText().indexOf("column: object");
+		assertTrue(document.edit(columnStart, columnStart, "c1: array<object {\n\ty: int\n}>\n"));
+		final int t2Start = document.getText().indexOf("t2: object");
+		assertTrue(document.edit(t2Start, document.getText().indexOf("\n}", t2Start) + 2, "t2: string"));
+		assertDocumentEquals(document);
+	}
+
+	private void assertDocumentEquals(ToodleDocument document) throws IOException {
+		final Type expected = new ToodleReader(new StringReader(document.getText())).read();
+		final ToodleToJsonConverter converter = new ToodleToJsonConverter();
+		assertEquals(gson.toJson(converter.toJson(expected.getSubDefinitions())),
+				gson.toJson(converter.toJson(document.getRootType().getSubDefinitions())));
+		assertEquals(locations(expected), locations(document.getRootType()));
+	}
+
+	private static List<String> locations(Type type) {
+		final List<String> res = new ArrayList<>();
+		type.getTypeParams().forEach(t -> res.addAll(locations(t)));
+		for (final TypeDefinition definition : type.getSubDefinitions()) {
+			res.add(definition.getName() + ":" + definition.getLocation().getLine());
+			res.addAll(locations(definition.getType()));
+		}
+		return res;
+	}
+
+	private static Type readDatabase() throws IOException {
+		try (final Reader reader = new BufferedReader(new FileReader(getResourceFile("database.2dl")))) {
+			return new ToodleReader(reader).read();
+		}
+	}
+
+	private static JsonElement readJson(String resourceName) throws IOException {
+		try (final Reader reader = new BufferedReader(new FileReader(getResourceFile(resourceName)))) {
+			return new ToodleToJsonConverter().toJson(new ToodleReader(reader).read().getSubDefinitions());
+		}
+	}
+
 	@Test
 	public void testDataTypes() {
 		final DataTypeCatalog env = BuiltinCatalog.get();
@@ -96,6 +623,306 @@ public class ToodleTest {
 
 	}
 
+	@Test
+	public void testExprPredicates() {
+		final DataTypeCatalog env = BuiltinCatalog.get();
+		final DataType int_t = dataType(BuiltinCatalog.TYPE_INT);
+		final DataType bool_t = dataType(BuiltinCatalog.TYPE_BOOL);
+
+		assertTrue(env.isSubstitute(Expr.parseNumber("1e2"), int_t));
+		assertTrue(env.isSubstitute(Expr.parseNumber("2.0"), int_t));
+		assertFalse(env.isSubstitute(Expr.parseNumber("2.5"), int_t));
+		assertFalse(env.isSubstitute(Expr.parseNumber("2147483648"), int_t));
+		assertFalse(env.isSubstitute(new Expr("a"), int_t));
+		assertTrue(env.isSubstitute(new Expr("true"), bool_t));
+		assertTrue(env.isSubstitute(new Expr("false"), bool_t));
+		assertFalse(env.isSubstitute(new Expr("a"), bool_t));
+		assertFalse(env.isSubstitute(Expr.parseNumber("1"), bool_t));
+
+		assertEquals(new BigDecimal("-2.50"), Expr.parseNumber("-2.50").getAsBigDecimal());
+		assertEquals("0.1", Expr.parseNumber("0.1").toLiteral());
+		assertEquals(123, Expr.parseNumber("0123").getAsInt());
+	}
+
+	@Test
+	public void testAnnotationParams() throws Exception {
+		final Type rootType = new ToodleReader(new StringReader("let $max = 10\na: int range(0, $max) label(x)\n"))
+				.read();
+		final TypeAnnotation range = rootType.getSubDefinition("a").getType().getAnnotation("range");
+		assertEquals(2, range.getParamCount());
+		assertEquals(10, range.getInt(1));
+		assertEquals("x", rootType.getSubDefinition("a").getType().getAnnotation("label").getString(0));
+		assertEquals(Arrays.asList(0, 10), range.getIntParams());
+		assertSame(range.getIntParams(), range.getIntParams());
+
+		// modifying the parameters drops the cached views
+		range.getExprParams_mutable().set(1, Expr.parseNumber("20"));
+		assertEquals(Arrays.asList(0, 20), range.getIntParams());
+		range.getExprParams_mutable().remove(0);
+		assertEquals(Arrays.asList(new BigDecimal(20)), range.getBigDecimalParams());
+
+		// the annotations by name
+		final Map<String, TypeAnnotation> annotations = rootType.getSubDefinition("a").getType().getAnnotations();
+		assertEquals(Arrays.asList("range", "label"), new ArrayList<>(annotations.keySet()));
+		assertTrue(annotations.keySet().contains("label"));
+		final Iterator<TypeAnnotation> values = annotations.values().iterator();
+		assertSame(range, values.next());
+		values.remove();
+		assertEquals(Arrays.asList("label"), new ArrayList<>(annotations.keySet()));
+	}
+
+	@Test
+	public void testFreeze() throws Exception {
+		final Type rootType = readDatabase().freeze();
+		assertTrue(rootType.isFrozen());
+		final TypeDefinition table = rootType.getSubDefinition("table");
+		final Type name = table.getType().getSubDefinition("name").getType();
+		assertEquals("TODO", name.getAnnotation("description").getString(0));
+		// the typed views of a frozen annotation are not cached
+		assertEquals(Arrays.asList("TODO"), name.getAnnotation("description").getStringParams());
+		assertNotSame(name.getAnnotation("description").getStringParams(),
+				name.getAnnotation("description").getStringParams());
+
+		final List<Runnable> modifications = Arrays.asList(() -> name.setName("int"),
+				() -> name.getAnnotations().remove("description"),
+				() -> name.getAnnotation("description").getExprParams_mutable().add(new Expr("a")),
+				() -> table.getModifiers().add("abstract"), () -> rootType.getSubDefinitions().remove(0),
+				() -> table.getType().getTypeParams().add(name), () -> rootType.addVarDefinition("x", new Expr("a")));
+		for (final Runnable modification : modifications) {
+			try {
+				modification.run();
+				fail();
+			} catch (final UnsupportedOperationException e) {
+				// expected
+			}
+		}
+		assertEquals(gson.toJson(readJson("database.2dl")),
+				gson.toJson(new ToodleToJsonConverter().toJson(rootType.getSubDefinitions())));
+	}
+
+	@Test
+	public void testArena() throws Exception {
+		final Type rootType;
+		final Type schemaRootType;
+		try (final Reader definitionsReader = new BufferedReader(new FileReader(getResourceFile("database.2dl")));
+				Reader schemaReader = new BufferedReader(new FileReader(getResourceFile("schema.2dl")))) {
+			rootType = new ToodleReader(definitionsReader).read();
+			schemaRootType = new ToodleReader(schemaReader).read();
+		}
+		final StringWriter expected = new StringWriter();
+		new ToodleWriter(expected).execute(rootType);
+		for (final boolean offHeap : new boolean[] { false, true }) {
+			final TypeArena arena = TypeArena.of(rootType, offHeap);
+			assertEquals(offHeap, arena.isOffHeap());
+			final StringWriter actual = new StringWriter();
+			new ToodleWriter(actual).execute(arena);
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals(gson.toJson(readJson("database.2dl")),
+					gson.toJson(new ToodleToJsonConverter().toJson(arena.toType().getSubDefinitions())));
+			assertTrue(new ToodleSchema(schemaRootType).validate(arena));
+
+			final TypeCursor cursor = arena.cursor();
+			assertEquals(TypeArena.KIND_ROOT, cursor.getKind());
+			assertTrue(cursor.toFirstChild());
+			while (!"table".equals(cursor.getName())) {
+				assertTrue(cursor.toNextSibling());
+			}
+			assertEquals(TypeArena.KIND_DEFINITION, cursor.getKind());
+			assertEquals(10, cursor.getLocation().getLine());
+			assertTrue(cursor.toFirstChild());
+			while (!"name".equals(cursor.getName())) {
+				assertTrue(cursor.toNextSibling());
+			}
+			assertEquals("string", cursor.getTypeName());
+			assertEquals("TODO", cursor.getParam(cursor.indexOfAnnotation("description"), 0).getAsString());
+			assertTrue(cursor.toParent());
+			assertEquals("table", cursor.getName());
+		}
+
+		final TypeArena invalid = TypeArena.of(new ToodleReader(new StringReader("a: int\nb: int foo(1)\n")).read());
+		final ToodleSchema schema = new ToodleSchema(schemaRootType);
+		assertFalse(schema.validate(invalid));
+		assertEquals(1, schema.getViolations().size());
+	}
+
+	@Test
+	public void testShareIdenticalTypes() throws Exception {
+		assertEquals(new Expr(1), new Expr(new BigDecimal("1")));
+		assertEquals(new Expr(1).hashCode(), new Expr(new BigDecimal("1")).hashCode());
+		assertEquals(new Expr(1.5), new Expr(new BigDecimal("1.5")));
+		assertNotEquals(new Expr(1), new Expr("1"));
+		final List<Expr> elements = Arrays.asList(new Expr(1), new Expr(2));
+		assertEquals(new Expr(elements), Expr.packList(elements));
+		assertEquals(new Expr(elements).hashCode(), Expr.packList(elements).hashCode());
+
+		final String text = "a: object {\n\tx: string nullable maxLength(255)\n\ty: array<column>\n}\n"
+				+ "b: object {\n\tx: string nullable maxLength(255)\n\ty: array<column>\n}\n";
+		final Type rootType = new ToodleReader(new StringReader(text)).read();
+		assertEquals(rootType, new ToodleReader(new StringReader(text)).read());
+		assertEquals(rootType.hashCode(), new ToodleReader(new StringReader(text)).read().hashCode());
+		final Type a = rootType.getSubDefinition("a").getType();
+		final Type b = rootType.getSubDefinition("b").getType();
+		assertEquals(a, b);
+		final StringWriter expected = new StringWriter();
+		new ToodleWriter(expected).execute(rootType);
+
+		final ShareIdenticalTypes pass = new ShareIdenticalTypes();
+		pass.execute(rootType);
+		assertTrue(rootType.isFrozen());
+		assertEquals(8, pass.getTypeCount());
+		// a and b are defined on different lines
+		assertEquals(5, pass.getDistinctTypeCount());
+		assertEquals(4, pass.getAnnotationCount());
+		assertEquals(2, pass.getDistinctAnnotationCount());
+		assertNotSame(a, b);
+		assertSame(a.getSubDefinition("x").getType(), b.getSubDefinition("x").getType());
+		assertSame(a.getSubDefinition("y").getType(), b.getSubDefinition("y").getType());
+		// a is the parent of the types shared with b, and keeps the indexes built when it was frozen
+		for (final Type type : Arrays.asList(rootType, a, b)) {
+			assertTrue(hasSubDefinitionIndexes(type));
+		}
+		final StringWriter actual = new StringWriter();
+		new ToodleWriter(actual).execute(rootType);
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	private static boolean hasSubDefinitionIndexes(Type type) throws ReflectiveOperationException {
+		for (final String fieldName : Arrays.asList("subDefinitionsByName", "subDefinitionsByTypeName")) {
+			final Field field = Type.class.getDeclaredField(fieldName);
+			field.setAccessible(true);
+			if (field.get(type) == null) return false;
+		}
+		return true;
+	}
+
+	@Test
+	public void testDiff() throws Exception {
+		final Type oldRootType = new ToodleReader(
+				new StringReader("a: int min(0)\nb: array<string>\nc: string\nd: object {\n\tx: int\n}\n")).read();
+		final Type newRootType = new ToodleReader(new StringReader(
+				"a: int min(1)\nb: array<int>\nd: object {\n\tx: int\n\ty: int\n}\ne: int nullable\n")).read();
+		final List<String> changes = new ToodleDiff().execute(oldRootType.freeze(), newRootType.freeze()).stream()
+				.map(Change::toString).collect(Collectors.toList());
+		assertEquals(Arrays.asList("CHANGED ANNOTATION a min: min(0) -> min(1)",
+				"CHANGED TYPE_NAME b<0>: string -> int", "REMOVED DEFINITION c: c: string -> null",
+				"ADDED DEFINITION d y: null -> y: int", "ADDED DEFINITION e: null -> e: int nullable"), changes);
+
+		final Type rootType = readDatabase();
+		final long contentHash = rootType.getContentHash();
+		assertEquals(contentHash, rootType.getContentHash(new IdentityHashMap<>()));
+		assertEquals(contentHash, rootType.freeze().getContentHash());
+		assertTrue(new ToodleDiff().execute(rootType, new ToodleReader(new StringReader("")).read()).size() > 0);
+		final Type sameRootType = readDatabase();
+		assertEquals(contentHash, sameRootType.getContentHash());
+		assertTrue(new ToodleDiff().execute(rootType, sameRootType).isEmpty());
+	}
+
+	@Test
+	public void testIndex() throws Exception {
+		final Type rootType = readDatabase();
+		final ToodleIndex index = new ToodleIndex(rootType);
+		assertEquals(13, index.size());
+		assertEquals("[database/name, table/name, table/type, column/name, column/typeName]",
+				index.getDefinitionsOfType("string").toString());
+		assertEquals("[table/name]", index.getDefinitionsWithAnnotation("description").toString());
+		assertSame(rootType.getSubDefinition("table").getType(),
+				index.getDefinitionsWithAnnotation("description").iterator().next().getContainer());
+		assertTrue(index.getDefinitionsWithModifier("optional").isEmpty());
+
+		final Type column = rootType.getSubDefinition("column").getType();
+		final TypeDefinition id = new TypeDefinition("id", Arrays.asList("optional"), new Type("int", column));
+		column.getSubDefinitions().add(id);
+		index.add(id, column);
+		assertEquals("[column/id]", index.getDefinitionsWithModifier("optional").toString());
+		assertEquals(3, index.getDefinitionsOfType("int").size());
+
+		final TypeDefinition table = rootType.getSubDefinition("table");
+		rootType.getSubDefinitions().remove(table);
+		index.remove(table);
+		assertEquals(10, index.size());
+		assertTrue(index.getDefinitionsWithAnnotation("description").isEmpty());
+		assertEquals("[database/name, column/name, column/typeName]", index.getDefinitionsOfType("string").toString());
+	}
+
+	@Test
+	public void testSelectors() throws Exception {
+		final Type rootType = readDatabase();
+		final Selector strings = Selector.compile("table/*[type=string]");
+		final Selector described = Selector.compile("//*[annotation=description]");
+		final Selector objects = Selector.compile("*[type=object]");
+		final Selector tables = Selector.compile("database/tables[typeParam=table]");
+		assertEquals(Arrays.asList("name", "type"), names(strings.select(rootType)));
+		assertEquals(Arrays.asList("name"), names(described.select(rootType)));
+		assertEquals(Arrays.asList("database", "table", "column"), names(objects.select(rootType)));
+		assertEquals(Arrays.asList("tables"), names(tables.select(rootType)));
+		assertTrue(Selector.compile("table/*[modifier=optional]").select(rootType).isEmpty());
+
+		final SelectorMatcher matcher = new SelectorMatcher(Arrays.asList(strings, described, objects, tables));
+		final Map<Selector, List<TypeDefinition>> matches = matcher.execute(rootType);
+		for (final Selector selector : matcher.getSelectors()) {
+			assertEquals(selector.select(rootType), matches.get(selector));
+		}
+
+		// sub-definitions of type parameters, and '//' between steps
+		final Type nested = new ToodleReader(
+				new StringReader("a: object {\n b: array<object {\n c: int\n d: object {\n c: string\n }\n }>\n}\n"))
+						.read();
+		assertEquals(Arrays.asList("int", "string"), typeNames(Selector.compile("a//c").select(nested)));
+		assertEquals(Arrays.asList("int"), typeNames(Selector.compile("a/b/c").select(nested)));
+		assertEquals(Arrays.asList("int", "string"), typeNames(Selector.compile("//c").select(nested)));
+
+		for (final String invalid : Arrays.asList("", "a/", "a[type]", "a[foo=b]", "a[type=b", "a b")) {
+			try {
+				Selector.compile(invalid);
+				fail(invalid);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testSchemaInheritance() throws Exception {
+		final String schemaText = "base: type abstract composite {\n\tmode: annotation<enum of(fast, slow)> required\n"
+				+ "\tflag: annotation<bool>\n\tkey: modifier\n}\n"
+				+ "node: type extends(base) composite(leaf) {\n\tsizes: annotation<variadic<int>>\n}\n"
+				+ "leaf: type extends(base)\n";
+		final String text = "a: node mode(fast) sizes(1, 2, 3) {\n\tkey b: leaf mode(slow) flag(true)\n"
+				+ "\tbad c: leaf mode(fast)\n}\n" + "d: node flag(maybe) mode(medium)\n" + "e: leaf\n"
+				+ "f: base mode(fast)\n" + "g: leaf mode(fast) sizes(1)\n";
+		final ToodleSchema schema = new ToodleSchema(new ToodleReader(new StringReader(schemaText)).read());
+		assertTrue(schema.isSubstitute("leaf", "base"));
+		assertFalse(schema.isSubstitute("base", "leaf"));
+		assertFalse(schema.validate(new ToodleReader(new StringReader(text)).read()));
+		assertEquals(Arrays.asList("Line 3: c: Invalid modifier: bad",
+				"Line 5: d: annotation flag: was expecting 'true' or 'false', got 'maybe'",
+				"Line 5: d: annotation mode: invalid enum value 'medium'. Must be one of: fast, slow",
+				"Line 6: e: a required annotation 'mode' is missing",
+				"Line 7: f: cannot be defined of type 'base' because 'base' is abstract.",
+				"Line 8: g: the annotation 'sizes' is not allowed"), schema.getViolations());
+	}
+
+	@Test
+	public void testMalformedAnnotationSchema() throws Exception {
+		final String schemaText = "node: type {\n\tmode: annotation<enum>\n\tsizes: annotation<variadic>\n"
+				+ "\tflag: annotation\n}\n";
+		final String text = "a: node\nb: node mode(fast) sizes(1) flag(true)\n";
+		final ToodleSchema schema = new ToodleSchema(new ToodleReader(new StringReader(schemaText)).read());
+		assertFalse(schema.validate(new ToodleReader(new StringReader(text)).read()));
+		assertEquals(Arrays.asList("Line 2: b: annotation mode: invalid schema: enum has no 'of' annotation",
+				"Line 2: b: annotation sizes: invalid schema: variadic has no type parameter",
+				"Line 2: b: annotation flag: invalid schema: the type of the parameters is not specified"),
+				schema.getViolations());
+	}
+
+	private static List<String> names(List<TypeDefinition> definitions) {
+		return definitions.stream().map(TypeDefinition::getName).collect(Collectors.toList());
+	}
+
+	private static List<String> typeNames(List<TypeDefinition> definitions) {
+		return definitions.stream().map(d -> d.getType().getName()).collect(Collectors.toList());
+	}
+
 	public static DataType dataType(String name, String... paramTypes_str) {
 		final List<DataType> paramTypes = Stream.of(paramTypes_str).map(paramName -> new DataType(paramName))
 				.collect(Collectors.toList());